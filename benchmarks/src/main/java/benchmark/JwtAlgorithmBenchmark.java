@@ -0,0 +1,112 @@
+package benchmark;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auth.PemUtils;
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
+import io.smallrye.jwt.build.Jwt;
+
+// Emision (firma) y verificacion de un token como los de AuthService con cada valor de jwt.signing.algorithm
+// Las llaves pasan por PemUtils igual que las que vienen de Secrets Manager
+// java -jar target/benchmarks.jar JwtAlgorithmBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAlgorithmBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    String algorithm;
+
+    private SignatureAlgorithm signatureAlgorithm;
+    private PrivateKey privateKey;
+    private JwtConsumer consumer;
+    private String token;
+
+    @Setup
+    public void setup() throws Exception {
+        signatureAlgorithm = SignatureAlgorithm.valueOf(algorithm.toUpperCase());
+        KeyPair keyPair = generate(signatureAlgorithm);
+        privateKey = PemUtils.readPrivateKeyFromPem(pem("PRIVATE KEY", keyPair.getPrivate().getEncoded()));
+        PublicKey publicKey = PemUtils.readPublicKeyFromPem(pem("PUBLIC KEY", keyPair.getPublic().getEncoded()));
+
+        consumer = new JwtConsumerBuilder()
+            .setRequireExpirationTime()
+            .setExpectedIssuer("user-storer")
+            .setJwsAlgorithmConstraints(AlgorithmConstraints.ConstraintType.PERMIT, signatureAlgorithm.getAlgorithm())
+            .setVerificationKey(publicKey)
+            .build();
+        token = issue();
+    }
+
+    static KeyPair generate(SignatureAlgorithm algorithm) throws Exception {
+        switch (algorithm) {
+            case ES256: {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+                generator.initialize(new ECGenParameterSpec("secp256r1"));
+                return generator.generateKeyPair();
+            }
+            case EDDSA:
+                return KeyPairGenerator.getInstance("Ed25519").generateKeyPair();
+            default: {
+                KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+                generator.initialize(2048);
+                return generator.generateKeyPair();
+            }
+        }
+    }
+
+    static String pem(String type, byte[] encoded) {
+        return "-----BEGIN " + type + "-----\n"
+            + Base64.getMimeEncoder().encodeToString(encoded)
+            + "\n-----END " + type + "-----\n";
+    }
+
+    @Benchmark
+    public String issue() {
+        Instant now = Instant.now();
+        return Jwt.claims()
+            .issuer("user-storer")
+            .subject("5f0c3a52-8d7e-4f4b-9a55-0d6c1c2f7e11")
+            .upn("benchmark@example.com")
+            .groups(Set.of("USER"))
+            .claim("username", "benchmark")
+            .issuedAt(now.getEpochSecond())
+            .expiresAt(now.plusSeconds(900).getEpochSecond())
+            .jws()
+            .algorithm(signatureAlgorithm)
+            .keyId("benchmark")
+            .sign(privateKey);
+    }
+
+    @Benchmark
+    public JwtClaims verify() throws Exception {
+        return consumer.processToClaims(token);
+    }
+}
@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import auth.PemUtils;
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
+
+// Parseo de las llaves PEM que vienen de Secrets Manager, corre al arrancar y en cada refresco de llaves
+// java -jar target/benchmarks.jar PemUtilsBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PemUtilsBenchmark {
+
+    @Param({"RS256", "ES256", "EdDSA"})
+    String algorithm;
+
+    private String privateKeyPem;
+    private String publicKeyPem;
+
+    @Setup
+    public void setup() throws Exception {
+        KeyPair keyPair = JwtAlgorithmBenchmark.generate(SignatureAlgorithm.valueOf(algorithm.toUpperCase()));
+        privateKeyPem = JwtAlgorithmBenchmark.pem("PRIVATE KEY", keyPair.getPrivate().getEncoded());
+        publicKeyPem = JwtAlgorithmBenchmark.pem("PUBLIC KEY", keyPair.getPublic().getEncoded());
+    }
+
+    @Benchmark
+    public PrivateKey readPrivateKey() throws Exception {
+        return PemUtils.readPrivateKeyFromPem(privateKeyPem);
+    }
+
+    @Benchmark
+    public PublicKey readPublicKey() throws Exception {
+        return PemUtils.readPublicKeyFromPem(publicKeyPem);
+    }
+}
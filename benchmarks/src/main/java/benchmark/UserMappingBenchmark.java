@@ -0,0 +1,100 @@
+package benchmark;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.User;
+import model.UserTableSchema;
+import model.converter.InstantAttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+// Mapeo User <-> item de DynamoDB, se paga en cada lectura y escritura y en cada item de un scan. Compara el
+// TableSchema.fromBean que se usaba antes con UserTableSchema (StaticTableSchema) que usa UserRepository
+// El converter de Instant se mide aparte porque User tiene cuatro
+// java -jar target/benchmarks.jar UserMappingBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMappingBenchmark {
+
+    private TableSchema<User> schema;
+    private TableSchema<User> staticSchema;
+    private InstantAttributeConverter converter;
+    private User user;
+    private Map<String, AttributeValue> item;
+    private Instant instant;
+    private AttributeValue instantValue;
+
+    @Setup
+    public void setup() {
+        schema = TableSchema.fromBean(User.class);
+        staticSchema = UserTableSchema.create();
+        converter = new InstantAttributeConverter();
+        user = user();
+        item = schema.itemToMap(user, true);
+        instant = user.getCreated();
+        instantValue = converter.transformFrom(instant);
+    }
+
+    static User user() {
+        Instant now = Instant.parse("2026-01-15T10:15:30.123Z");
+        return User.builder()
+            .id("5f0c3a52-8d7e-4f4b-9a55-0d6c1c2f7e11")
+            .username("benchmark")
+            .email("benchmark@example.com")
+            .password("{bcrypt}$2a$12$R9h/cIPz0gi.URNNX3kh2OPST9/PgBkqquzi.Ss7KIUgO2t0jWMUW")
+            .roles(Set.of("USER", "ADMIN"))
+            .lastLogin(now)
+            .created(now.minusSeconds(86400))
+            .modified(now)
+            .version(3L)
+            .build();
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> itemToMap() {
+        return schema.itemToMap(user, true);
+    }
+
+    @Benchmark
+    public User mapToItem() {
+        return schema.mapToItem(item);
+    }
+
+    @Benchmark
+    public Map<String, AttributeValue> itemToMapStatic() {
+        return staticSchema.itemToMap(user, true);
+    }
+
+    @Benchmark
+    public User mapToItemStatic() {
+        return staticSchema.mapToItem(item);
+    }
+
+    @Benchmark
+    public AttributeValue instantToAttribute() {
+        return converter.transformFrom(instant);
+    }
+
+    @Benchmark
+    public Instant attributeToInstant() {
+        return converter.transformTo(instantValue);
+    }
+}
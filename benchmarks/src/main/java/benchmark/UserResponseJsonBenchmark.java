@@ -0,0 +1,64 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+
+import dto.UserResponseDTO;
+import model.User;
+
+// Serializacion de las listas de UserResponseDTO que devuelven GET /users y el batch get, con el ObjectMapper
+// configurado como el de Quarkus (fechas ISO-8601, sin fallar por propiedades desconocidas)
+// java -jar target/benchmarks.jar UserResponseJsonBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserResponseJsonBenchmark {
+
+    // 50 es el tamano de pagina por defecto y 500 el maximo
+    @Param({"1", "50", "500"})
+    int size;
+
+    private ObjectMapper mapper;
+    private List<UserResponseDTO> users;
+
+    @Setup
+    public void setup() {
+        mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+        User user = UserMappingBenchmark.user();
+        users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            users.add(new UserResponseDTO(user.getId() + i, user.getUsername() + i, i + user.getEmail(),
+                user.getLastLogin(), user.getCreated(), user.getModified(), user.getVersion()));
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws Exception {
+        return mapper.writeValueAsBytes(users);
+    }
+}
@@ -0,0 +1,36 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.User;
+import model.UserTableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+// Lo que cuesta armar el schema de User la primera vez en una JVM nueva, que es lo que se paga al arrancar
+// fromBean se cachea por clase, por eso cada medicion es un fork nuevo con una sola llamada
+// java -jar target/benchmarks.jar UserSchemaStartupBenchmark
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class UserSchemaStartupBenchmark {
+
+    @Benchmark
+    public TableSchema<User> fromBean() {
+        return TableSchema.fromBean(User.class);
+    }
+
+    @Benchmark
+    public TableSchema<User> staticSchema() {
+        return UserTableSchema.create();
+    }
+}
@@ -1,3 +1,9 @@
+# Tipo de llave para firmar los JWT, tiene que coincidir con jwt.signing.algorithm (RS256 | ES256 | EdDSA)
+param(
+    [ValidateSet("RS256", "ES256", "EdDSA")]
+    [string]$SigningAlgorithm = "RS256"
+)
+
 $ErrorActionPreference = "Stop"
 
 $TableName = "User"
@@ -34,19 +40,26 @@ if (-not (existTable)) {
     } while ($status -ne "ACTIVE")
 }
 
+# TTL sobre expiresAt para el borrado logico de users
+aws dynamodb update-time-to-live --table-name $TableName --time-to-live-specification "Enabled=true,AttributeName=expiresAt" --endpoint-url $Endpoint --region $Region 2>$null | Out-Null
+
 aws dynamodb batch-write-item --request-items file://$UserDataFile --endpoint-url $Endpoint --region $Region | Out-Null
 Write-Host "DynamoDB table '$TableName' is initialized."
 
 # Creamos las claves publicas y privadas si no existen
 if (-not (Test-Path -Path $PrivateKeyFile -PathType Leaf)) {
-    openssl genpkey -algorithm RSA -out $PrivateKeyFile -pkeyopt rsa_keygen_bits:2048 | Out-Null
+    switch ($SigningAlgorithm) {
+        "ES256" { openssl genpkey -algorithm EC -out $PrivateKeyFile -pkeyopt ec_paramgen_curve:P-256 | Out-Null }
+        "EdDSA" { openssl genpkey -algorithm ED25519 -out $PrivateKeyFile | Out-Null }
+        default { openssl genpkey -algorithm RSA -out $PrivateKeyFile -pkeyopt rsa_keygen_bits:2048 | Out-Null }
+    }
     Write-Host "Private key generated at '$PrivateKeyFile'."
 } else {
     Write-Host "Private key already exists at '$PrivateKeyFile'."
 }
 
 if (-not (Test-Path -Path $PublicKeyFile -PathType Leaf)) {
-    openssl rsa -pubout -in $PrivateKeyFile -out $PublicKeyFile | Out-Null
+    openssl pkey -pubout -in $PrivateKeyFile -out $PublicKeyFile | Out-Null
     Write-Host "Public key generated at '$PublicKeyFile'."
 } else {
     Write-Host "Public key already exists at '$PublicKeyFile'."
@@ -0,0 +1,190 @@
+// Trafico mixto contra la app a RPS constantes (login, create, get por id, busqueda por email y por username)
+// Los users sembrados por seed/seed.py son deterministas asi que no hace falta leer la tabla
+// Al final escribe /results/summary-<timestamp>.json y una tabla por endpoint con throughput, p50/p99/p999 y errores
+import http from 'k6/http';
+import { check } from 'k6';
+import exec from 'k6/execution';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080';
+const RPS = parseInt(__ENV.RPS || '200');
+const DURATION = __ENV.DURATION || '5m';
+const WARMUP = __ENV.WARMUP || '30s';
+const SEED_USERS = parseInt(__ENV.SEED_USERS || '100000');
+const PASSWORD = __ENV.SEED_PASSWORD || 'LoadTest-123!';
+const MAX_VUS = parseInt(__ENV.MAX_VUS || '500');
+// Los tokens duran 900 s, cada VU vuelve a loguearse antes de que venzan
+const TOKEN_TTL_MS = 10 * 60 * 1000;
+
+const ENDPOINTS = ['login', 'create', 'get', 'email', 'username'];
+
+// login=10,create=5,... en pesos acumulados para elegir la operacion de cada iteracion
+const MIX = (__ENV.MIX || 'login=10,create=5,get=50,email=20,username=15').split(',').map((entry) => {
+    const [name, weight] = entry.split('=');
+    if (!ENDPOINTS.includes(name)) {
+        throw new Error('Unknown endpoint in MIX: ' + name);
+    }
+    return { name, weight: parseFloat(weight) };
+});
+const TOTAL_WEIGHT = MIX.reduce((sum, entry) => sum + entry.weight, 0);
+
+const thresholds = {};
+for (const endpoint of ENDPOINTS) {
+    // Las submetricas por endpoint solo aparecen en el resumen si tienen un threshold
+    thresholds[`http_req_duration{endpoint:${endpoint},phase:measure}`] = ['p(99)<5000'];
+    thresholds[`http_req_failed{endpoint:${endpoint},phase:measure}`] = ['rate<0.01'];
+    thresholds[`http_reqs{endpoint:${endpoint},phase:measure}`] = ['count>=0'];
+}
+
+export const options = {
+    discardResponseBodies: false,
+    summaryTrendStats: ['avg', 'min', 'med', 'p(50)', 'p(90)', 'p(99)', 'p(99.9)', 'max'],
+    thresholds,
+    scenarios: {
+        // Calienta la JIT, la cache y el pool de conexiones, no cuenta para el resumen
+        warmup: {
+            executor: 'constant-arrival-rate',
+            rate: RPS,
+            timeUnit: '1s',
+            duration: WARMUP,
+            preAllocatedVUs: Math.min(MAX_VUS, Math.max(10, RPS)),
+            maxVUs: MAX_VUS,
+            tags: { phase: 'warmup' },
+        },
+        measure: {
+            executor: 'constant-arrival-rate',
+            rate: RPS,
+            timeUnit: '1s',
+            duration: DURATION,
+            startTime: WARMUP,
+            preAllocatedVUs: Math.min(MAX_VUS, Math.max(10, RPS)),
+            maxVUs: MAX_VUS,
+            tags: { phase: 'measure' },
+        },
+    },
+};
+
+let token = null;
+let tokenAt = 0;
+
+function randomUser() {
+    return Math.floor(Math.random() * SEED_USERS);
+}
+
+function userId(n) {
+    return '00000000-0000-4000-8000-' + String(n).padStart(12, '0');
+}
+
+function login(n) {
+    const response = http.post(`${BASE_URL}/auth/login`,
+        JSON.stringify({ email: `loadtest-${n}@example.com`, password: PASSWORD }),
+        { headers: { 'Content-Type': 'application/json' }, tags: { endpoint: 'login' } });
+    check(response, { 'login 200': (r) => r.status === 200 });
+    return response.status === 200 ? response.json('accessToken') : null;
+}
+
+function authHeaders() {
+    if (token === null || Date.now() - tokenAt > TOKEN_TTL_MS) {
+        token = login(randomUser());
+        tokenAt = Date.now();
+    }
+    return { headers: { Authorization: `Bearer ${token}`, 'Content-Type': 'application/json' } };
+}
+
+function pick() {
+    let value = Math.random() * TOTAL_WEIGHT;
+    for (const entry of MIX) {
+        value -= entry.weight;
+        if (value < 0) {
+            return entry.name;
+        }
+    }
+    return MIX[MIX.length - 1].name;
+}
+
+export default function () {
+    const endpoint = pick();
+    if (endpoint === 'login') {
+        login(randomUser());
+        return;
+    }
+
+    const params = authHeaders();
+    params.tags = { endpoint };
+    const n = randomUser();
+    let response;
+    switch (endpoint) {
+        case 'create': {
+            const suffix = `${exec.vu.idInTest}-${exec.vu.iterationInInstance}-${Date.now()}`;
+            response = http.post(`${BASE_URL}/users`, JSON.stringify({
+                username: `created${suffix}`.replace(/-/g, ''),
+                email: `created-${suffix}@example.com`,
+                password: PASSWORD,
+            }), params);
+            check(response, { 'create 201': (r) => r.status === 201 });
+            break;
+        }
+        case 'get':
+            response = http.get(`${BASE_URL}/users/${userId(n)}`, params);
+            check(response, { 'get 200': (r) => r.status === 200 });
+            break;
+        case 'email':
+            response = http.get(`${BASE_URL}/users/searchby/email?email=loadtest-${n}@example.com`, params);
+            check(response, { 'email 200': (r) => r.status === 200 });
+            break;
+        case 'username':
+            response = http.get(`${BASE_URL}/users/searchby/username?username=loadtest${n}`, params);
+            check(response, { 'username 200': (r) => r.status === 200 });
+            break;
+    }
+}
+
+function value(data, metric, stat) {
+    const entry = data.metrics[metric];
+    return entry && entry.values[stat] !== undefined ? entry.values[stat] : 0;
+}
+
+export function handleSummary(data) {
+    const seconds = parseDuration(DURATION);
+    const rows = ENDPOINTS.map((endpoint) => {
+        const tags = `{endpoint:${endpoint},phase:measure}`;
+        const count = value(data, `http_reqs${tags}`, 'count');
+        return {
+            endpoint,
+            requests: count,
+            throughput: count / seconds,
+            p50: value(data, `http_req_duration${tags}`, 'p(50)'),
+            p99: value(data, `http_req_duration${tags}`, 'p(99)'),
+            p999: value(data, `http_req_duration${tags}`, 'p(99.9)'),
+            errorRate: value(data, `http_req_failed${tags}`, 'rate'),
+        };
+    });
+
+    const report = {
+        startedAt: new Date(Date.now() - data.state.testRunDurationMs).toISOString(),
+        config: { rps: RPS, duration: DURATION, warmup: WARMUP, mix: MIX, seedUsers: SEED_USERS },
+        endpoints: rows,
+    };
+
+    let table = '\nendpoint    requests   req/s      p50 ms    p99 ms    p99.9 ms  errors\n';
+    for (const row of rows) {
+        table += row.endpoint.padEnd(12) + String(row.requests).padEnd(11) + row.throughput.toFixed(1).padEnd(11)
+            + row.p50.toFixed(1).padEnd(10) + row.p99.toFixed(1).padEnd(10) + row.p999.toFixed(1).padEnd(10)
+            + (row.errorRate * 100).toFixed(2) + '%\n';
+    }
+
+    const stamp = new Date().toISOString().replace(/[:.]/g, '-');
+    return {
+        stdout: table,
+        [`/results/summary-${stamp}.json`]: JSON.stringify(report, null, 2),
+        [`/results/k6-${stamp}.json`]: JSON.stringify(data),
+    };
+}
+
+function parseDuration(duration) {
+    const match = /^(\d+)(ms|s|m|h)$/.exec(duration);
+    if (!match) {
+        throw new Error('Unsupported DURATION ' + duration);
+    }
+    const factor = { ms: 0.001, s: 1, m: 60, h: 3600 }[match[2]];
+    return parseInt(match[1]) * factor;
+}
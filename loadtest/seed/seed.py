@@ -0,0 +1,127 @@
+"""Prepara LocalStack para el load test.
+
+- Crea la tabla User con ../table-init.json (si no existe) y activa el TTL sobre expiresAt
+- Carga ../user-data.json y SEED_USERS users sinteticos con sus items guarda EMAIL#/USERNAME#
+- Genera las llaves JWT del tipo SIGNING_ALGORITHM y crea los secretos jwt-private-key / jwt-public-key
+
+Los users sinteticos son deterministas para que k6 los pueda adivinar sin leer la tabla:
+id 00000000-0000-4000-8000-<n con 12 digitos>, email loadtest-<n>@example.com, username loadtest<n>
+Todos tienen la misma password (SEED_PASSWORD) hasheada una sola vez con el costo que usa la app
+"""
+
+import json
+import os
+import time
+from concurrent.futures import ThreadPoolExecutor
+
+import bcrypt
+import boto3
+from botocore.config import Config
+from cryptography.hazmat.primitives import serialization
+from cryptography.hazmat.primitives.asymmetric import ec, ed25519, rsa
+
+TABLE = "User"
+ENDPOINT = os.environ.get("AWS_ENDPOINT", "http://localhost:4566")
+USERS = int(os.environ.get("SEED_USERS", "100000"))
+PASSWORD = os.environ.get("SEED_PASSWORD", "LoadTest-123!")
+COST = int(os.environ.get("SEED_BCRYPT_COST", "12"))
+ALGORITHM = os.environ.get("SIGNING_ALGORITHM", "RS256")
+CONCURRENCY = int(os.environ.get("SEED_CONCURRENCY", "16"))
+
+config = Config(retries={"max_attempts": 10, "mode": "adaptive"}, max_pool_connections=CONCURRENCY)
+dynamodb = boto3.client("dynamodb", endpoint_url=ENDPOINT, config=config)
+secrets = boto3.client("secretsmanager", endpoint_url=ENDPOINT, config=config)
+
+
+def user_id(n):
+    return "00000000-0000-4000-8000-%012d" % n
+
+
+def create_table():
+    try:
+        dynamodb.describe_table(TableName=TABLE)
+        print("Table %s already exists" % TABLE)
+    except dynamodb.exceptions.ResourceNotFoundException:
+        with open("/data/table-init.json") as f:
+            dynamodb.create_table(**json.load(f))
+        dynamodb.get_waiter("table_exists").wait(TableName=TABLE)
+        print("Table %s created" % TABLE)
+    dynamodb.update_time_to_live(
+        TableName=TABLE, TimeToLiveSpecification={"Enabled": True, "AttributeName": "expiresAt"})
+
+
+def write_batch(requests):
+    # BatchWriteItem acepta 25 items, lo que DynamoDB no proceso se reintenta
+    pending = {TABLE: requests}
+    while pending:
+        pending = dynamodb.batch_write_item(RequestItems=pending).get("UnprocessedItems") or None
+
+
+def user_items(n, password_hash, now_millis):
+    uid = user_id(n)
+    email = "loadtest-%d@example.com" % n
+    username = "loadtest%d" % n
+    return [
+        {"id": {"S": uid},
+         "username": {"S": username},
+         "email": {"S": email},
+         "password": {"S": password_hash},
+         "roles": {"SS": ["USER"]},
+         "created": {"N": str(now_millis)},
+         "modified": {"N": str(now_millis)},
+         "version": {"N": "1"}},
+        {"id": {"S": "EMAIL#" + email}, "ownerId": {"S": uid}},
+        {"id": {"S": "USERNAME#" + username}, "ownerId": {"S": uid}},
+    ]
+
+
+def seed_users():
+    with open("/data/user-data.json") as f:
+        for table, requests in json.load(f).items():
+            for i in range(0, len(requests), 25):
+                write_batch(requests[i:i + 25])
+
+    # Con el prefijo {bcrypt} y el mismo costo la app no los rehashea en el primer login
+    password_hash = "{bcrypt}" + bcrypt.hashpw(PASSWORD.encode(), bcrypt.gensalt(COST, prefix=b"2a")).decode()
+    now_millis = int(time.time() * 1000)
+
+    # 8 users por batch = 24 items (user + 2 guardas)
+    chunks = [range(start, min(start + 8, USERS)) for start in range(0, USERS, 8)]
+    started = time.time()
+    with ThreadPoolExecutor(CONCURRENCY) as executor:
+        for done, _ in enumerate(executor.map(
+                lambda chunk: write_batch([{"PutRequest": {"Item": item}}
+                                           for n in chunk for item in user_items(n, password_hash, now_millis)]),
+                chunks), 1):
+            if done % 1000 == 0:
+                print("Seeded %d users" % (done * 8))
+    print("Seeded %d users in %.1f s" % (USERS, time.time() - started))
+
+
+def generate_keys():
+    if ALGORITHM == "ES256":
+        key = ec.generate_private_key(ec.SECP256R1())
+    elif ALGORITHM == "EdDSA":
+        key = ed25519.Ed25519PrivateKey.generate()
+    else:
+        key = rsa.generate_private_key(public_exponent=65537, key_size=2048)
+    private_pem = key.private_bytes(serialization.Encoding.PEM, serialization.PrivateFormat.PKCS8,
+                                    serialization.NoEncryption()).decode()
+    public_pem = key.public_key().public_bytes(serialization.Encoding.PEM,
+                                               serialization.PublicFormat.SubjectPublicKeyInfo).decode()
+    put_secret("jwt-private-key", private_pem)
+    put_secret("jwt-public-key", public_pem)
+    print("%s keys stored in Secrets Manager" % ALGORITHM)
+
+
+def put_secret(name, value):
+    try:
+        secrets.create_secret(Name=name, SecretString=value)
+    except secrets.exceptions.ResourceExistsException:
+        secrets.put_secret_value(SecretId=name, SecretString=value)
+
+
+if __name__ == "__main__":
+    create_table()
+    generate_keys()
+    seed_users()
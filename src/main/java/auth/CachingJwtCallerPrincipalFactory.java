@@ -0,0 +1,192 @@
+package auth;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Priority;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.inject.Alternative;
+import jakarta.inject.Inject;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jose4j.jwa.AlgorithmConstraints;
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.consumer.InvalidJwtException;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.jose4j.jwt.consumer.JwtContext;
+import org.jose4j.lang.UnresolvableKeyException;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.smallrye.jwt.auth.principal.DefaultJWTCallerPrincipal;
+import io.smallrye.jwt.auth.principal.JWTAuthContextInfo;
+import io.smallrye.jwt.auth.principal.JWTCallerPrincipal;
+import io.smallrye.jwt.auth.principal.JWTCallerPrincipalFactory;
+import io.smallrye.jwt.auth.principal.ParseException;
+
+// Reemplaza la validacion por defecto de SmallRye, que verificaba la firma RSA en cada request aunque el token sea el
+// mismo durante sus 900 s. La llave se elige por el kid del header entre las de verificacion de SecretsManagerJwtKeyProvider
+// (la actual y la anterior), leidas en cada verificacion para tomar las rotaciones sin reiniciar
+// Los tokens ya verificados se cachean por su SHA-256 hasta su exp, un hit solo parsea el JSON de los claims
+@ApplicationScoped
+@Alternative
+@Priority(1)
+public class CachingJwtCallerPrincipalFactory extends JWTCallerPrincipalFactory {
+
+    @Inject
+    SecretsManagerJwtKeyProvider keyProvider;
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "mp.jwt.verify.issuer", defaultValue = "user-storer")
+    String issuer;
+
+    @ConfigProperty(name = "jwt.verify.clock-skew", defaultValue = "PT30S")
+    Duration clockSkew;
+
+    @ConfigProperty(name = "jwt.verify.cache.enabled", defaultValue = "true")
+    boolean cacheEnabled;
+
+    @ConfigProperty(name = "jwt.verify.cache.max-size", defaultValue = "10000")
+    long cacheMaxSize;
+
+    private JwtConsumer consumer;
+    private Cache<String, VerifiedToken> verified;
+
+    // Se guarda el JSON y no los JwtClaims porque DefaultJWTCallerPrincipal modifica los claims que recibe
+    private record VerifiedToken(String claimsJson, String kid, long expiresAtMillis) {}
+
+    @PostConstruct
+    void init() {
+        consumer = new JwtConsumerBuilder()
+            .setRequireExpirationTime()
+            .setRequireSubject()
+            .setExpectedIssuer(issuer)
+            .setAllowedClockSkewInSeconds((int) clockSkew.toSeconds())
+            // Durante un cambio de jwt.signing.algorithm conviven tokens de los dos tipos, cada llave solo acepta el suyo
+            .setJwsAlgorithmConstraints(AlgorithmConstraints.ConstraintType.PERMIT, AlgorithmIdentifiers.RSA_USING_SHA256,
+                AlgorithmIdentifiers.ECDSA_USING_P256_CURVE_AND_SHA256, AlgorithmIdentifiers.EDDSA)
+            .setVerificationKeyResolver((jws, nestingContext) ->
+                verificationKey(jws.getKeyIdHeaderValue(), jws.getAlgorithmHeaderValue()))
+            .build();
+
+        verified = Caffeine.newBuilder()
+            .maximumSize(cacheMaxSize)
+            .expireAfter(new Expiry<String, VerifiedToken>() {
+                @Override
+                public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+                    long remaining = value.expiresAtMillis() - System.currentTimeMillis();
+                    return Duration.ofMillis(Math.max(0, remaining)).toNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, value, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(registry, verified, "jwt.verified-tokens");
+    }
+
+    private Key verificationKey(String kid, String algorithm) throws UnresolvableKeyException {
+        List<SecretsManagerJwtKeyProvider.SigningKey> keys = keyProvider.getVerificationKeys();
+        SecretsManagerJwtKeyProvider.SigningKey match = null;
+        // Tokens emitidos antes de tener kid: se validan con la llave actual
+        if (kid == null) {
+            match = keys.get(0);
+        }
+        for (SecretsManagerJwtKeyProvider.SigningKey key : keys) {
+            if (key.kid().equals(kid)) {
+                match = key;
+            }
+        }
+        if (match == null) {
+            throw new UnresolvableKeyException("Unknown key id " + kid);
+        }
+        if (!match.algorithm().getAlgorithm().equals(algorithm)) {
+            throw new UnresolvableKeyException("Algorithm " + algorithm + " does not match key " + match.kid());
+        }
+        return match.publicKey();
+    }
+
+    @Override
+    public JWTCallerPrincipal parse(String token, JWTAuthContextInfo authContextInfo) throws ParseException {
+        if (!cacheEnabled) {
+            return principal(token, verify(token).claimsJson());
+        }
+
+        String cacheKey = sha256(token);
+        VerifiedToken cached = verified.getIfPresent(cacheKey);
+        // La llave con la que se firmo pudo salir del juego de verificacion por una rotacion
+        if (cached != null && (cached.expiresAtMillis() <= System.currentTimeMillis() || !isActive(cached.kid()))) {
+            verified.invalidate(cacheKey);
+            cached = null;
+        }
+        if (cached == null) {
+            cached = verify(token);
+            verified.put(cacheKey, cached);
+        }
+        return principal(token, cached.claimsJson());
+    }
+
+    private VerifiedToken verify(String token) throws ParseException {
+        try {
+            JwtContext context = consumer.process(token);
+            JwtClaims claims = context.getJwtClaims();
+            String kid = context.getJoseObjects().get(0).getKeyIdHeaderValue();
+            long expiresAt = claims.getExpirationTime().getValueInMillis() + clockSkew.toMillis();
+            return new VerifiedToken(claims.toJson(), kid, expiresAt);
+        } catch (InvalidJwtException | MalformedClaimException e) {
+            throw new ParseException("Invalid token", e);
+        }
+    }
+
+    private boolean isActive(String kid) {
+        if (kid == null) {
+            return true;
+        }
+        for (SecretsManagerJwtKeyProvider.SigningKey key : keyProvider.getVerificationKeys()) {
+            if (key.kid().equals(kid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static JWTCallerPrincipal principal(String token, String claimsJson) throws ParseException {
+        try {
+            return new DefaultJWTCallerPrincipal(token, "JWT", JwtClaims.parse(claimsJson));
+        } catch (InvalidJwtException e) {
+            throw new ParseException("Invalid token", e);
+        }
+    }
+
+    private static String sha256(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
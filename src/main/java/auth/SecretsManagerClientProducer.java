@@ -7,24 +7,35 @@ import jakarta.enterprise.inject.Produces;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import config.AwsTracingInterceptor;
+import io.opentelemetry.api.trace.Tracer;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
 import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerAsyncClient;
 
 @ApplicationScoped
 public class SecretsManagerClientProducer {
 
     @Produces
     @ApplicationScoped
-    public SecretsManagerClient secretsManagerClient(
+    public SecretsManagerAsyncClient secretsManagerAsyncClient(Tracer tracer,
             @ConfigProperty(name = "aws.region", defaultValue = "us-east-1") String region,
             @ConfigProperty(name = "aws.secretsmanager.endpoint", defaultValue = "") String endpoint,
             @ConfigProperty(name = "aws.access-key-id", defaultValue = "") String accessKeyId,
             @ConfigProperty(name = "aws.secret-access-key", defaultValue = "") String secretAccessKey) {
 
-        var builder = SecretsManagerClient.builder().region(Region.of(region));
+        // Async con netty igual que DynamoDB, las llaves se piden sin bloquear ningun hilo
+        var builder = SecretsManagerAsyncClient.builder()
+            .httpClientBuilder(NettyNioAsyncHttpClient.builder())
+            // Spans de GetSecretValue, se ven en las trazas del refresco de llaves
+            .overrideConfiguration(ClientOverrideConfiguration.builder()
+                .addExecutionInterceptor(new AwsTracingInterceptor(tracer))
+                .build())
+            .region(Region.of(region));
 
         if (!accessKeyId.isBlank() && !secretAccessKey.isBlank()) {
             builder.credentialsProvider(
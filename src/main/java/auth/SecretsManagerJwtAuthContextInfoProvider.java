@@ -26,7 +26,9 @@ public class SecretsManagerJwtAuthContextInfoProvider {
     public JWTAuthContextInfo getContextInfo() {
         JWTAuthContextInfo info = new JWTAuthContextInfo();
         info.setIssuedBy(issuer);
-        info.setPublicKeyContent(keyProvider.getPublicKeyPem());
+        // JWKS con la llave actual y la anterior al arrancar. La validacion la hace CachingJwtCallerPrincipalFactory,
+        // que lee las llaves del provider en cada verificacion
+        info.setPublicKeyContent(keyProvider.getVerificationJwks());
         return info;
     }
 
@@ -1,20 +1,53 @@
 package auth;
 
+import java.nio.charset.StandardCharsets;
+import java.security.AlgorithmParameters;
+import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.EdECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
 
 import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.jose4j.jwk.JsonWebKey;
+import org.jose4j.jwk.JsonWebKeySet;
+import org.jose4j.jwk.PublicJsonWebKey;
+import org.jose4j.lang.JoseException;
 
-import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
-import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueRequest;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
+import io.smallrye.mutiny.Uni;
+import software.amazon.awssdk.services.secretsmanager.SecretsManagerAsyncClient;
+import software.amazon.awssdk.services.secretsmanager.model.GetSecretValueResponse;
+import software.amazon.awssdk.services.secretsmanager.model.ResourceNotFoundException;
 
+// Antes las llaves se pedian con el cliente bloqueante la primera vez que se firmaba un token, o sea en el event loop
+// durante el primer login. Ahora se cargan al arrancar con el cliente async y se refrescan cada jwt.keys.refresh-interval
+// Se guarda la llave actual y la anterior, cada una con su kid (thumbprint SHA-256 de la publica, RFC 7638), asi se
+// puede rotar el secreto sin reiniciar: los tokens nuevos salen con la actual y los emitidos antes siguen validando
+// Al arrancar la anterior sale de la version AWSPREVIOUS del secreto publico, asi un reinicio justo despues de una
+// rotacion no invalida los tokens emitidos con la llave vieja
 @ApplicationScoped
 public class SecretsManagerJwtKeyProvider {
 
+    public record SigningKey(String kid, SignatureAlgorithm algorithm, PrivateKey privateKey, PublicKey publicKey,
+        String publicKeyPem) {}
+
     @Inject
-    SecretsManagerClient client;
+    SecretsManagerAsyncClient client;
 
     @ConfigProperty(name = "jwt.private-key.secret-name", defaultValue = "jwt-private-key")
     String privateKeySecretName;
@@ -22,31 +55,219 @@ public class SecretsManagerJwtKeyProvider {
     @ConfigProperty(name = "jwt.public-key.secret-name", defaultValue = "jwt-public-key")
     String publicKeySecretName;
 
-    private volatile PrivateKey cachedPrivateKey;
-    private volatile String cachedPublicKeyPem;
+    // RS256 | ES256 | EdDSA, los secretos tienen que tener llaves de ese tipo (ES256 con la curva P-256)
+    @ConfigProperty(name = "jwt.signing.algorithm", defaultValue = "RS256")
+    String signingAlgorithm;
 
-    public PrivateKey getPrivateKey() {
-        if (cachedPrivateKey != null) {
-            return cachedPrivateKey;
+    // Solo para tests que arrancan la app sin Secrets Manager
+    @ConfigProperty(name = "jwt.keys.load-on-startup", defaultValue = "true")
+    boolean loadOnStartup;
+
+    @ConfigProperty(name = "jwt.keys.load-timeout", defaultValue = "PT30S")
+    Duration loadTimeout;
+
+    // Se reemplazan juntas, un lector nunca ve la actual nueva con la anterior vieja
+    private volatile KeyRing keys;
+
+    private record KeyRing(SigningKey current, SigningKey previous) {}
+
+    // El tamano del campo no alcanza para distinguir curvas (secp256k1 tambien es de 256 bits), se comparan los parametros
+    private static final ECParameterSpec P256 = p256();
+
+    // Sin llaves no se puede emitir ni validar ningun token, mejor fallar el arranque
+    void onStart(@Observes StartupEvent event) {
+        if (!loadOnStartup) {
+            return;
+        }
+        refresh().await().atMost(loadTimeout);
+    }
+
+    @Scheduled(every = "${jwt.keys.refresh-interval:5m}", delayed = "${jwt.keys.refresh-interval:5m}",
+        concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> scheduledRefresh() {
+        // Si Secrets Manager falla seguimos con las llaves que ya teniamos
+        return refresh()
+            .onFailure().invoke(failure -> Log.warnf(failure, "Could not refresh JWT keys, keeping the current ones"))
+            .onFailure().recoverWithNull();
+    }
+
+    Uni<Void> refresh() {
+        return Uni.combine().all()
+            .unis(secret(privateKeySecretName), secret(publicKeySecretName))
+            .asTuple()
+            .map(pems -> signingKey(pems.getItem1(), pems.getItem2()))
+            .chain(loaded -> previousKey(loaded).invoke(previous -> install(loaded, previous)))
+            .replaceWithVoid();
+    }
+
+    private void install(SigningKey loaded, SigningKey previous) {
+        KeyRing ring = keys;
+        if (ring != null && ring.current().kid().equals(loaded.kid())) {
+            return;
+        }
+        SignatureAlgorithm expected = SignatureAlgorithm.valueOf(signingAlgorithm.trim().toUpperCase());
+        if (loaded.algorithm() != expected) {
+            String message = "JWT keys are for " + loaded.algorithm().getAlgorithm() + " but jwt.signing.algorithm is "
+                + expected.getAlgorithm();
+            if (ring == null) {
+                throw new IllegalStateException(message);
+            }
+            Log.warnf("%s, keeping key %s", message, ring.current().kid());
+            return;
+        }
+        // Durante una rotacion los dos secretos pueden no actualizarse a la vez, no usamos un par que no coincide
+        if (!matches(loaded)) {
+            if (ring == null) {
+                throw new IllegalStateException("JWT private and public keys do not match");
+            }
+            Log.warnf("JWT private and public keys do not match, keeping key %s", ring.current().kid());
+            return;
+        }
+        keys = new KeyRing(loaded, ring == null ? previous : ring.current());
+        Log.infof("Loaded JWT signing key %s", loaded.kid());
+    }
+
+    // Solo en la primera carga, despues la anterior es la que estaba en memoria. Sin version anterior (nunca se roto) o
+    // si no se puede leer se arranca solo con la actual
+    private Uni<SigningKey> previousKey(SigningKey loaded) {
+        if (keys != null) {
+            return Uni.createFrom().nullItem();
+        }
+        return Uni.createFrom()
+            .completionStage(() -> client.getSecretValue(r -> r.secretId(publicKeySecretName).versionStage("AWSPREVIOUS")))
+            .map(response -> verificationKey(response.secretString()))
+            .map(previous -> previous.kid().equals(loaded.kid()) ? null : previous)
+            .onFailure(ResourceNotFoundException.class).recoverWithNull()
+            .onFailure().invoke(failure -> Log.warnf(failure, "Could not load the previous JWT public key from %s",
+                publicKeySecretName))
+            .onFailure().recoverWithNull();
+    }
+
+    private Uni<String> secret(String secretId) {
+        return Uni.createFrom()
+            .completionStage(() -> client.getSecretValue(r -> r.secretId(secretId)))
+            .map(GetSecretValueResponse::secretString);
+    }
+
+    private static SigningKey signingKey(String privateKeyPem, String publicKeyPem) {
+        PublicKey publicKey = PemUtils.readPublicKeyFromPem(publicKeyPem);
+        return new SigningKey(thumbprint(publicKey), algorithm(publicKey), PemUtils.readPrivateKeyFromPem(privateKeyPem),
+            publicKey, publicKeyPem);
+    }
+
+    // Solo la publica: la anterior sirve para verificar, nunca se firma con ella
+    private static SigningKey verificationKey(String publicKeyPem) {
+        PublicKey publicKey = PemUtils.readPublicKeyFromPem(publicKeyPem);
+        return new SigningKey(thumbprint(publicKey), algorithm(publicKey), null, publicKey, publicKeyPem);
+    }
+
+    static SignatureAlgorithm algorithm(PublicKey publicKey) {
+        if (publicKey instanceof RSAPublicKey) {
+            return SignatureAlgorithm.RS256;
         }
-        String pem = client.getSecretValue(GetSecretValueRequest.builder()
-                .secretId(privateKeySecretName)
-                .build())
-            .secretString();
+        if (publicKey instanceof ECPublicKey ec && isP256(ec.getParams())) {
+            return SignatureAlgorithm.ES256;
+        }
+        if (publicKey instanceof EdECPublicKey ed && "Ed25519".equals(ed.getParams().getName())) {
+            return SignatureAlgorithm.EDDSA;
+        }
+        throw new IllegalArgumentException("Unsupported JWT key, expected RSA, EC P-256 or Ed25519");
+    }
+
+    private static boolean isP256(ECParameterSpec params) {
+        return params.getCurve().equals(P256.getCurve())
+            && params.getGenerator().equals(P256.getGenerator())
+            && params.getOrder().equals(P256.getOrder())
+            && params.getCofactor() == P256.getCofactor();
+    }
+
+    private static ECParameterSpec p256() {
+        try {
+            AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+            parameters.init(new ECGenParameterSpec("secp256r1"));
+            return parameters.getParameterSpec(ECParameterSpec.class);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Nombre JCA de la firma de cada algoritmo JWS
+    static String jcaAlgorithm(SignatureAlgorithm algorithm) {
+        return switch (algorithm) {
+            case ES256 -> "SHA256withECDSA";
+            case EDDSA -> "Ed25519";
+            default -> "SHA256withRSA";
+        };
+    }
+
+    static String thumbprint(PublicKey publicKey) {
+        try {
+            return PublicJsonWebKey.Factory.newPublicJwk(publicKey).calculateBase64urlEncodedThumbprint("SHA-256");
+        } catch (JoseException e) {
+            throw new IllegalArgumentException("Unsupported public key", e);
+        }
+    }
+
+    private static boolean matches(SigningKey key) {
+        try {
+            byte[] probe = key.kid().getBytes(StandardCharsets.UTF_8);
+            Signature signer = Signature.getInstance(jcaAlgorithm(key.algorithm()));
+            signer.initSign(key.privateKey());
+            signer.update(probe);
+            byte[] signature = signer.sign();
 
-        cachedPrivateKey = PemUtils.readPrivateKeyFromPem(pem);
-        return cachedPrivateKey;
+            Signature verifier = Signature.getInstance(jcaAlgorithm(key.algorithm()));
+            verifier.initVerify(key.publicKey());
+            verifier.update(probe);
+            return verifier.verify(signature);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private KeyRing keys() {
+        KeyRing ring = keys;
+        if (ring == null) {
+            throw new IllegalStateException("JWT keys are not loaded yet");
+        }
+        return ring;
+    }
+
+    public SigningKey getSigningKey() {
+        return keys().current();
+    }
+
+    public PrivateKey getPrivateKey() {
+        return keys().current().privateKey();
     }
-    
 
     public String getPublicKeyPem() {
-        if (cachedPublicKeyPem != null) {
-            return cachedPublicKeyPem;
+        return keys().current().publicKeyPem();
+    }
+
+    // Llaves con las que se aceptan tokens: la actual y, si hubo rotacion, la anterior
+    public List<SigningKey> getVerificationKeys() {
+        KeyRing ring = keys();
+        List<SigningKey> verificationKeys = new ArrayList<>();
+        verificationKeys.add(ring.current());
+        if (ring.previous() != null) {
+            verificationKeys.add(ring.previous());
+        }
+        return verificationKeys;
+    }
+
+    // Las llaves de verificacion como JWKS, cada una con su kid
+    public String getVerificationJwks() {
+        List<JsonWebKey> jwks = new ArrayList<>();
+        for (SigningKey key : getVerificationKeys()) {
+            try {
+                PublicJsonWebKey jwk = PublicJsonWebKey.Factory.newPublicJwk(key.publicKey());
+                jwk.setKeyId(key.kid());
+                jwks.add(jwk);
+            } catch (JoseException e) {
+                throw new IllegalStateException("Unsupported public key", e);
+            }
         }
-        cachedPublicKeyPem = client.getSecretValue(GetSecretValueRequest.builder()
-                .secretId(publicKeySecretName)
-                .build())
-            .secretString();
-        return cachedPublicKeyPem;
+        return new JsonWebKeySet(jwks).toJson();
     }
-}
\ No newline at end of file
+}
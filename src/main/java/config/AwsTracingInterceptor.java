@@ -0,0 +1,129 @@
+package config;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import software.amazon.awssdk.awscore.AwsResponse;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Un span CLIENT por llamada al SDK (DynamoDB y Secrets Manager), hijo del span activo en el hilo que hace la llamada
+// (el del servicio o el repositorio). Lleva la tabla, el indice, las capacity units consumidas y los reintentos
+// El span se abre en beforeExecution, que el SDK corre en el hilo del caller, y se cierra en afterExecution o en
+// onExecutionFailure, que corren en los hilos del SDK
+public class AwsTracingInterceptor implements ExecutionInterceptor {
+
+    private static final ExecutionAttribute<Span> SPAN = new ExecutionAttribute<>("TracingSpan");
+    private static final ExecutionAttribute<AtomicInteger> ATTEMPTS = new ExecutionAttribute<>("TracingAttempts");
+
+    private static final AttributeKey<String> RPC_SYSTEM = AttributeKey.stringKey("rpc.system");
+    private static final AttributeKey<String> RPC_SERVICE = AttributeKey.stringKey("rpc.service");
+    private static final AttributeKey<String> RPC_METHOD = AttributeKey.stringKey("rpc.method");
+    private static final AttributeKey<String> DB_SYSTEM = AttributeKey.stringKey("db.system");
+    private static final AttributeKey<List<String>> TABLE_NAMES = AttributeKey.stringArrayKey("aws.dynamodb.table_names");
+    private static final AttributeKey<String> INDEX_NAME = AttributeKey.stringKey("aws.dynamodb.index_name");
+    private static final AttributeKey<Double> CONSUMED_CAPACITY = AttributeKey.doubleKey("aws.dynamodb.consumed_capacity.total");
+    private static final AttributeKey<Long> RETRY_COUNT = AttributeKey.longKey("aws.retry_count");
+    private static final AttributeKey<String> REQUEST_ID = AttributeKey.stringKey("aws.request_id");
+
+    private final Tracer tracer;
+
+    public AwsTracingInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void beforeExecution(software.amazon.awssdk.core.interceptor.Context.BeforeExecution context,
+            ExecutionAttributes executionAttributes) {
+        String service = executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME);
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        Span span = tracer.spanBuilder(service + "." + operation)
+                .setParent(Context.current())
+                .setSpanKind(SpanKind.CLIENT)
+                .setAttribute(RPC_SYSTEM, "aws-api")
+                .setAttribute(RPC_SERVICE, service)
+                .setAttribute(RPC_METHOD, operation)
+                .startSpan();
+
+        SdkRequest request = context.request();
+        if ("DynamoDb".equals(service)) {
+            span.setAttribute(DB_SYSTEM, "dynamodb");
+            List<String> tables = tableNames(request);
+            if (!tables.isEmpty()) {
+                span.setAttribute(TABLE_NAMES, tables);
+            }
+            request.getValueForField("IndexName", String.class).ifPresent(index -> span.setAttribute(INDEX_NAME, index));
+        }
+
+        executionAttributes.putAttribute(SPAN, span);
+        executionAttributes.putAttribute(ATTEMPTS, new AtomicInteger());
+    }
+
+    @Override
+    public void beforeTransmission(software.amazon.awssdk.core.interceptor.Context.BeforeTransmission context,
+            ExecutionAttributes executionAttributes) {
+        AtomicInteger attempts = executionAttributes.getAttribute(ATTEMPTS);
+        if (attempts != null) {
+            attempts.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void afterExecution(software.amazon.awssdk.core.interceptor.Context.AfterExecution context,
+            ExecutionAttributes executionAttributes) {
+        Span span = executionAttributes.getAttribute(SPAN);
+        if (span == null) {
+            return;
+        }
+        List<ConsumedCapacity> capacities = ConsumedCapacityInterceptor.consumedCapacity(context.response());
+        if (!capacities.isEmpty()) {
+            span.setAttribute(CONSUMED_CAPACITY, capacities.stream()
+                    .filter(capacity -> capacity.capacityUnits() != null)
+                    .mapToDouble(ConsumedCapacity::capacityUnits)
+                    .sum());
+        }
+        if (context.response() instanceof AwsResponse response && response.responseMetadata().requestId() != null) {
+            span.setAttribute(REQUEST_ID, response.responseMetadata().requestId());
+        }
+        end(span, executionAttributes);
+    }
+
+    @Override
+    public void onExecutionFailure(software.amazon.awssdk.core.interceptor.Context.FailedExecution context,
+            ExecutionAttributes executionAttributes) {
+        Span span = executionAttributes.getAttribute(SPAN);
+        if (span == null) {
+            return;
+        }
+        span.recordException(context.exception());
+        span.setStatus(StatusCode.ERROR, context.exception().getMessage());
+        end(span, executionAttributes);
+    }
+
+    private static void end(Span span, ExecutionAttributes executionAttributes) {
+        AtomicInteger attempts = executionAttributes.getAttribute(ATTEMPTS);
+        span.setAttribute(RETRY_COUNT, attempts == null ? 0 : Math.max(0, attempts.get() - 1));
+        span.end();
+    }
+
+    // TableName en las operaciones de una tabla, las llaves de RequestItems en BatchGetItem y BatchWriteItem
+    private static List<String> tableNames(SdkRequest request) {
+        List<String> tables = new ArrayList<>();
+        request.getValueForField("TableName", String.class).ifPresent(tables::add);
+        request.getValueForField("RequestItems", Map.class).ifPresent(items -> items.keySet()
+                .forEach(table -> tables.add(table.toString())));
+        return tables;
+    }
+}
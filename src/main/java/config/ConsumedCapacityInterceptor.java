@@ -0,0 +1,109 @@
+package config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.SdkResponse;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.services.dynamodb.model.BatchGetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.BatchWriteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.ConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.DeleteItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.ReturnConsumedCapacity;
+import software.amazon.awssdk.services.dynamodb.model.ScanRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactGetItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
+
+import java.util.List;
+
+// Pide ReturnConsumedCapacity=TOTAL en todas las llamadas que lo soportan (si el request no lo pidio ya) y suma las
+// capacity units de la respuesta en dynamodb_consumed_capacity_total con tags client, operation y table
+// Asi el repositorio no tiene que acordarse de pedirlo en cada request
+class ConsumedCapacityInterceptor implements ExecutionInterceptor {
+
+    private final MeterRegistry registry;
+    private final String client;
+
+    ConsumedCapacityInterceptor(MeterRegistry registry, String client) {
+        this.registry = registry;
+        this.client = client;
+    }
+
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        SdkRequest request = context.request();
+        if (request.getValueForField("ReturnConsumedCapacity", String.class).isPresent()) {
+            return request;
+        }
+        ReturnConsumedCapacity total = ReturnConsumedCapacity.TOTAL;
+        if (request instanceof GetItemRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof PutItemRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof UpdateItemRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof DeleteItemRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof QueryRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof ScanRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof BatchGetItemRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof BatchWriteItemRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof TransactGetItemsRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        if (request instanceof TransactWriteItemsRequest r) {
+            return r.toBuilder().returnConsumedCapacity(total).build();
+        }
+        return request;
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        consumedCapacity(context.response()).forEach(capacity -> record(operation, capacity));
+    }
+
+    // Las operaciones de un item devuelven un ConsumedCapacity, las batch y transact una lista por tabla
+    static List<ConsumedCapacity> consumedCapacity(SdkResponse response) {
+        Object value = response.getValueForField("ConsumedCapacity", Object.class).orElse(null);
+        if (value instanceof ConsumedCapacity capacity) {
+            return List.of(capacity);
+        }
+        if (value instanceof List<?> capacities) {
+            return capacities.stream().map(ConsumedCapacity.class::cast).toList();
+        }
+        return List.of();
+    }
+
+    private void record(String operation, ConsumedCapacity capacity) {
+        if (capacity.capacityUnits() == null) {
+            return;
+        }
+        Counter.builder("dynamodb.consumed.capacity")
+                .baseUnit("capacity-units")
+                .tag("client", client)
+                .tag("operation", operation == null ? "unknown" : operation)
+                .tag("table", capacity.tableName() == null ? "unknown" : capacity.tableName())
+                .register(registry)
+                .increment(capacity.capacityUnits());
+    }
+}
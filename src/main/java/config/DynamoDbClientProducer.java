@@ -1,29 +1,159 @@
 package config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.api.trace.Tracer;
+import io.quarkus.runtime.StartupEvent;
+import io.vertx.core.Vertx;
 import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.enterprise.inject.Disposes;
 import jakarta.enterprise.inject.Produces;
+import jakarta.inject.Inject;
 import org.eclipse.microprofile.config.inject.ConfigProperty;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.awscore.retry.AwsRetryStrategy;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
 import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.retries.api.BackoffStrategy;
+import software.amazon.awssdk.retries.api.RetryStrategy;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 
 import java.net.URI;
+import java.time.Duration;
 
 @ApplicationScoped
 public class DynamoDbClientProducer {
 
+    @Inject
+    Vertx vertx;
+
+    // Con los defaults de netty (50 conexiones, 10000 acquires pendientes sin timeouts de llamada) las rafagas terminaban
+    // en "acquire timeout". Todo lo del pool y los timeouts se configura con aws.dynamodb.http.*
+    @ConfigProperty(name = "aws.dynamodb.http.max-concurrency", defaultValue = "200")
+    int maxConcurrency;
+
+    @ConfigProperty(name = "aws.dynamodb.http.max-pending-acquires", defaultValue = "10000")
+    int maxPendingAcquires;
+
+    @ConfigProperty(name = "aws.dynamodb.http.connection-acquire-timeout", defaultValue = "PT5S")
+    Duration connectionAcquireTimeout;
+
+    @ConfigProperty(name = "aws.dynamodb.http.connection-timeout", defaultValue = "PT2S")
+    Duration connectionTimeout;
+
+    // Cerrar conexiones viejas ayuda a repartir entre los hosts de DynamoDB cuando cambia el DNS
+    @ConfigProperty(name = "aws.dynamodb.http.connection-ttl", defaultValue = "PT5M")
+    Duration connectionTtl;
+
+    @ConfigProperty(name = "aws.dynamodb.http.connection-max-idle-time", defaultValue = "PT60S")
+    Duration connectionMaxIdleTime;
+
+    @ConfigProperty(name = "aws.dynamodb.http.read-timeout", defaultValue = "PT30S")
+    Duration readTimeout;
+
+    @ConfigProperty(name = "aws.dynamodb.http.write-timeout", defaultValue = "PT30S")
+    Duration writeTimeout;
+
+    @ConfigProperty(name = "aws.dynamodb.http.tcp-keepalive", defaultValue = "true")
+    boolean tcpKeepAlive;
+
+    // true: usa los event loops de Vert.x en vez de crear otro grupo de hilos de netty
+    @ConfigProperty(name = "aws.dynamodb.http.use-vertx-event-loop", defaultValue = "true")
+    boolean useVertxEventLoop;
+
+    // Solo si no se comparte con Vert.x, 0 = el default de netty (2 por core)
+    @ConfigProperty(name = "aws.dynamodb.http.event-loop-threads", defaultValue = "0")
+    int eventLoopThreads;
+
+    // Tiempo total de una llamada incluidos los reintentos, y de cada intento
+    @ConfigProperty(name = "aws.dynamodb.api-call-timeout", defaultValue = "PT10S")
+    Duration apiCallTimeout;
+
+    @ConfigProperty(name = "aws.dynamodb.api-call-attempt-timeout", defaultValue = "PT2S")
+    Duration apiCallAttemptTimeout;
+
+    // Reintentos (aws.dynamodb.retry.*): adaptive agrega al standard un rate limiter del lado del cliente (token bucket)
+    // que baja el ritmo de envio cuando DynamoDB throttlea, en vez de que todos los requests reintenten a la vez
+    // Lecturas y escrituras tienen clientes separados, cada uno con su estrategia y su presupuesto de reintentos
+    @ConfigProperty(name = "aws.dynamodb.retry.mode", defaultValue = "adaptive")
+    String retryMode;
+
+    @ConfigProperty(name = "aws.dynamodb.retry.read.max-attempts", defaultValue = "4")
+    int readMaxAttempts;
+
+    @ConfigProperty(name = "aws.dynamodb.retry.write.max-attempts", defaultValue = "3")
+    int writeMaxAttempts;
+
+    // Backoff exponencial con full jitter, con una base mas alta para los errores de throttling
+    @ConfigProperty(name = "aws.dynamodb.retry.base-delay", defaultValue = "PT0.025S")
+    Duration retryBaseDelay;
+
+    @ConfigProperty(name = "aws.dynamodb.retry.throttling-base-delay", defaultValue = "PT0.1S")
+    Duration retryThrottlingBaseDelay;
+
+    @ConfigProperty(name = "aws.dynamodb.retry.max-backoff", defaultValue = "PT2S")
+    Duration retryMaxBackoff;
+
+    // Pide y cuenta las capacity units consumidas por cada llamada (ConsumedCapacityInterceptor)
+    @ConfigProperty(name = "aws.dynamodb.metrics.consumed-capacity", defaultValue = "true")
+    boolean consumedCapacityMetrics;
+
+    @Inject
+    MeterRegistry registry;
+
+    @Inject
+    Tracer tracer;
+
+    @ConfigProperty(name = "aws.region", defaultValue = "us-east-1")
+    String region;
+
+    @ConfigProperty(name = "aws.endpoint", defaultValue = "")
+    String endpoint;
+
+    // Un solo pool de conexiones compartido por los dos clientes
     @Produces
     @ApplicationScoped
-    public DynamoDbAsyncClient dynamoDbAsyncClient(
-            // Leemos de application.properties
-            @ConfigProperty(name = "aws.region", defaultValue = "us-east-1") String region,
-            @ConfigProperty(name = "aws.endpoint", defaultValue = "") String endpoint) {
+    public SdkAsyncHttpClient dynamoDbHttpClient() {
+        return httpClientBuilder().build();
+    }
+
+    void closeHttpClient(@Disposes SdkAsyncHttpClient httpClient) {
+        httpClient.close();
+    }
+
+    @Produces
+    @ApplicationScoped
+    public DynamoDbAsyncClient dynamoDbAsyncClient(SdkAsyncHttpClient httpClient) {
+        return client(httpClient, "write", writeMaxAttempts);
+    }
+
+    @Produces
+    @ApplicationScoped
+    @ReadClient
+    public DynamoDbAsyncClient dynamoDbReadAsyncClient(SdkAsyncHttpClient httpClient) {
+        return client(httpClient, "read", readMaxAttempts);
+    }
+
+    private DynamoDbAsyncClient client(SdkAsyncHttpClient httpClient, String name, int maxAttempts) {
+        var overrides = ClientOverrideConfiguration.builder()
+                .apiCallTimeout(apiCallTimeout)
+                .apiCallAttemptTimeout(apiCallAttemptTimeout)
+                .retryStrategy(retryStrategy(maxAttempts))
+                .addMetricPublisher(new DynamoDbMetricPublisher(registry, name));
+        if (consumedCapacityMetrics) {
+            overrides.addExecutionInterceptor(new ConsumedCapacityInterceptor(registry, name));
+        }
+        // Despues del de capacity para que la respuesta ya traiga ConsumedCapacity
+        overrides.addExecutionInterceptor(new AwsTracingInterceptor(tracer));
 
         // Usamos netty por que es el recomendado para aplicaciones reactivas
         var builder = DynamoDbAsyncClient.builder()
-                .httpClientBuilder(NettyNioAsyncHttpClient.builder())
+                .httpClient(httpClient)
+                .overrideConfiguration(overrides.build())
                 .region(Region.of(region))
                 .credentialsProvider(DefaultCredentialsProvider.builder().build());
 
@@ -35,12 +165,67 @@ public class DynamoDbClientProducer {
         return builder.build();
     }
 
+    // Un modo mal escrito caia en adaptive sin avisar, ahora falla el arranque aunque todavia nadie haya pedido un cliente
+    void onStart(@Observes StartupEvent event) {
+        standardRetry();
+    }
+
+    private boolean standardRetry() {
+        return switch (retryMode.trim().toLowerCase()) {
+            case "standard" -> true;
+            case "adaptive" -> false;
+            default -> throw new IllegalArgumentException("Unsupported aws.dynamodb.retry.mode " + retryMode
+                    + ", expected adaptive or standard");
+        };
+    }
+
+    // Cada cliente necesita su propia instancia, el token bucket y el rate limiter viven en la estrategia
+    private RetryStrategy retryStrategy(int maxAttempts) {
+        BackoffStrategy backoff = BackoffStrategy.exponentialDelay(retryBaseDelay, retryMaxBackoff);
+        BackoffStrategy throttlingBackoff = BackoffStrategy.exponentialDelay(retryThrottlingBaseDelay, retryMaxBackoff);
+        if (standardRetry()) {
+            return AwsRetryStrategy.standardRetryStrategy().toBuilder()
+                    .maxAttempts(maxAttempts)
+                    .backoffStrategy(backoff)
+                    .throttlingBackoffStrategy(throttlingBackoff)
+                    .build();
+        }
+        return AwsRetryStrategy.adaptiveRetryStrategy().toBuilder()
+                .maxAttempts(maxAttempts)
+                .backoffStrategy(backoff)
+                .throttlingBackoffStrategy(throttlingBackoff)
+                .build();
+    }
+
+    private NettyNioAsyncHttpClient.Builder httpClientBuilder() {
+        var builder = NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConcurrency)
+                .maxPendingConnectionAcquires(maxPendingAcquires)
+                .connectionAcquisitionTimeout(connectionAcquireTimeout)
+                .connectionTimeout(connectionTimeout)
+                .connectionTimeToLive(connectionTtl)
+                .connectionMaxIdleTime(connectionMaxIdleTime)
+                .readTimeout(readTimeout)
+                .writeTimeout(writeTimeout)
+                .tcpKeepAlive(tcpKeepAlive)
+                .useIdleConnectionReaper(true);
+
+        // Un grupo que no creo el SDK no lo cierra al cerrar el cliente, Vert.x lo cierra al apagar la app
+        if (useVertxEventLoop) {
+            builder.eventLoopGroup(SdkEventLoopGroup.create(vertx.nettyEventLoopGroup()));
+        } else if (eventLoopThreads > 0) {
+            builder.eventLoopGroupBuilder(SdkEventLoopGroup.builder().numberOfThreads(eventLoopThreads));
+        }
+        return builder;
+    }
+
     // El cliente asyncrono mejorado de DynamoDB, que es el que usamos, el anterior se creo por que es necesario por este
     @Produces
     @ApplicationScoped
-    public DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient(DynamoDbAsyncClient asyncClient) {
+    // Se arma sobre el cliente de lecturas, las escrituras van casi todas por el cliente de bajo nivel
+    public DynamoDbEnhancedAsyncClient dynamoDbEnhancedAsyncClient(@ReadClient DynamoDbAsyncClient asyncClient) {
         return DynamoDbEnhancedAsyncClient.builder()
                 .dynamoDbClient(asyncClient)
                 .build();
     }
-}
\ No newline at end of file
+}
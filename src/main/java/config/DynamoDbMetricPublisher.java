@@ -0,0 +1,78 @@
+package config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.core.metrics.CoreMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+
+import java.time.Duration;
+import java.util.List;
+
+// Cuenta llamadas, reintentos y throttles de cada cliente de DynamoDB a partir de las metricas del SDK
+// En /q/metrics: dynamodb_calls_total, dynamodb_retries_total y dynamodb_throttles_total con tags client y operation,
+// y los timers dynamodb_call_duration_seconds (la llamada completa con reintentos, cada pagina de un scan es una) y
+// dynamodb_attempt_duration_seconds (solo el round trip HTTP de cada intento)
+class DynamoDbMetricPublisher implements MetricPublisher {
+
+    // Valor de CoreMetric.ERROR_TYPE para los intentos throttleados (SdkErrorType es interno del SDK)
+    private static final String THROTTLING = "Throttling";
+
+    private final MeterRegistry registry;
+    private final String client;
+
+    DynamoDbMetricPublisher(MeterRegistry registry, String client) {
+        this.registry = registry;
+        this.client = client;
+    }
+
+    @Override
+    public void publish(MetricCollection metrics) {
+        String operation = first(metrics.metricValues(CoreMetric.OPERATION_NAME), "unknown");
+        counter("dynamodb.calls", operation).increment();
+
+        Duration callDuration = first(metrics.metricValues(CoreMetric.API_CALL_DURATION), null);
+        if (callDuration != null) {
+            timer("dynamodb.call.duration", operation).record(callDuration);
+        }
+        metrics.childrenWithName("ApiCallAttempt")
+                .flatMap(attempt -> attempt.metricValues(CoreMetric.SERVICE_CALL_DURATION).stream())
+                .forEach(duration -> timer("dynamodb.attempt.duration", operation).record(duration));
+
+        int retries = first(metrics.metricValues(CoreMetric.RETRY_COUNT), 0);
+        if (retries > 0) {
+            counter("dynamodb.retries", operation).increment(retries);
+        }
+
+        long throttles = metrics.childrenWithName("ApiCallAttempt")
+                .filter(attempt -> attempt.metricValues(CoreMetric.ERROR_TYPE).contains(THROTTLING))
+                .count();
+        if (throttles > 0) {
+            counter("dynamodb.throttles", operation).increment(throttles);
+        }
+    }
+
+    private Counter counter(String name, String operation) {
+        return Counter.builder(name)
+                .tag("client", client)
+                .tag("operation", operation)
+                .register(registry);
+    }
+
+    private Timer timer(String name, String operation) {
+        return Timer.builder(name)
+                .tag("client", client)
+                .tag("operation", operation)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private static <T> T first(List<T> values, T defaultValue) {
+        return values.isEmpty() ? defaultValue : values.get(0);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,59 @@
+package config;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import repository.DynamoDbUserRepository;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Abre N conexiones al arrancar con GetItem concurrentes sobre una llave que no existe, asi los primeros requests
+// despues de un deploy no pagan el handshake TLS ni la resolucion de credenciales. Si falla solo se loguea
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "dynamodb", enableIfMissing = true)
+public class DynamoDbWarmup {
+
+    @Inject
+    DynamoDbAsyncClient dynamoDbClient;
+
+    @ConfigProperty(name = "aws.dynamodb.warmup.connections", defaultValue = "8")
+    int connections;
+
+    @ConfigProperty(name = "aws.dynamodb.warmup.timeout", defaultValue = "PT5S")
+    Duration timeout;
+
+    void onStart(@Observes StartupEvent event) {
+        if (connections <= 0) {
+            return;
+        }
+
+        List<Uni<Void>> calls = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            calls.add(Uni.createFrom()
+                    .completionStage(() -> dynamoDbClient.getItem(r -> r
+                            .tableName(DynamoDbUserRepository.TABLE_NAME)
+                            .key(Map.of("id", AttributeValue.fromS("WARMUP#")))))
+                    .replaceWithVoid());
+        }
+
+        long start = System.nanoTime();
+        try {
+            Uni.join().all(calls).andCollectFailures()
+                    .await().atMost(timeout);
+            Log.infof("Warmed up %d DynamoDB connections in %d ms", connections,
+                    Duration.ofNanos(System.nanoTime() - start).toMillis());
+        } catch (RuntimeException e) {
+            Log.warnf(e, "DynamoDB connection warm-up failed");
+        }
+    }
+}
@@ -1,15 +1,96 @@
 package config;
 
+import java.util.Map;
+
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.Produces;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.springframework.security.crypto.argon2.Argon2PasswordEncoder;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.DelegatingPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
+// Los hashes nuevos se guardan con prefijo {bcrypt} o {argon2} segun password.hashing.algorithm, y al verificar se usa
+// el algoritmo del prefijo. Los hashes viejos sin prefijo ($2a$...) se verifican como bcrypt
+// upgradeEncoding devuelve true si el hash guardado no coincide exactamente con la configuracion actual (algoritmo o
+// parametros, tanto si son mas debiles como si son mas fuertes), asi AuthService lo rehashea en el siguiente login
 @ApplicationScoped
 public class PasswordEncoderProducer {
 
+    static final String BCRYPT = "bcrypt";
+    static final String ARGON2 = "argon2";
+
     @Produces
     @ApplicationScoped
-    public BCryptPasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12); // Segun owasp para bcrypt > 10 rondas es lo recomendado 
+    public PasswordEncoder passwordEncoder(
+            @ConfigProperty(name = "password.hashing.algorithm", defaultValue = BCRYPT) String algorithm,
+            // Segun owasp para bcrypt > 10 rondas es lo recomendado
+            @ConfigProperty(name = "password.hashing.bcrypt.cost", defaultValue = "12") int bcryptCost,
+            // Defaults de owasp para argon2id: 19 MiB, 2 iteraciones, 1 hilo
+            @ConfigProperty(name = "password.hashing.argon2.memory-kib", defaultValue = "19456") int argon2Memory,
+            @ConfigProperty(name = "password.hashing.argon2.iterations", defaultValue = "2") int argon2Iterations,
+            @ConfigProperty(name = "password.hashing.argon2.parallelism", defaultValue = "1") int argon2Parallelism) {
+
+        PasswordEncoder bcrypt = new ExactCostBCryptPasswordEncoder(bcryptCost);
+        PasswordEncoder argon2 = new ExactArgon2PasswordEncoder(argon2Memory, argon2Iterations, argon2Parallelism);
+
+        if (!BCRYPT.equals(algorithm) && !ARGON2.equals(algorithm)) {
+            throw new IllegalArgumentException("Unsupported password.hashing.algorithm " + algorithm);
+        }
+
+        DelegatingPasswordEncoder encoder = new DelegatingPasswordEncoder(algorithm, Map.of(
+            BCRYPT, bcrypt,
+            ARGON2, argon2));
+        encoder.setDefaultPasswordEncoderForMatches(bcrypt);
+        return encoder;
+    }
+
+    // BCryptPasswordEncoder solo pide upgrade si el costo guardado es menor, aca tambien si es mayor (bajar el costo
+    // para ganar throughput)
+    static class ExactCostBCryptPasswordEncoder extends BCryptPasswordEncoder {
+
+        private final int cost;
+
+        ExactCostBCryptPasswordEncoder(int cost) {
+            super(cost);
+            this.cost = cost;
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            // Formato $2a$12$...
+            if (encodedPassword == null || encodedPassword.length() < 7) {
+                return false;
+            }
+            try {
+                return Integer.parseInt(encodedPassword.substring(4, 6)) != cost;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+    }
+
+    static class ExactArgon2PasswordEncoder extends Argon2PasswordEncoder {
+
+        private static final int SALT_LENGTH = 16;
+        private static final int HASH_LENGTH = 32;
+
+        private final String parameters;
+
+        ExactArgon2PasswordEncoder(int memory, int iterations, int parallelism) {
+            super(SALT_LENGTH, HASH_LENGTH, parallelism, memory, iterations);
+            this.parameters = "m=" + memory + ",t=" + iterations + ",p=" + parallelism;
+        }
+
+        @Override
+        public boolean upgradeEncoding(String encodedPassword) {
+            // Formato $argon2id$v=19$m=19456,t=2,p=1$salt$hash
+            if (encodedPassword == null) {
+                return false;
+            }
+            String[] parts = encodedPassword.split("\\$");
+            return parts.length < 4 || !"argon2id".equals(parts[1]) || !parameters.equals(parts[3]);
+        }
     }
 }
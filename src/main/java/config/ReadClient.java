@@ -0,0 +1,16 @@
+package config;
+
+import jakarta.inject.Qualifier;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// DynamoDbAsyncClient para lecturas (GetItem, Query, Scan, BatchGetItem), con su propio presupuesto de reintentos y
+// rate limiting para que un throttling de escrituras no frene las lecturas y al reves. Sin calificador es el de escrituras
+@Qualifier
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER, ElementType.TYPE})
+public @interface ReadClient {
+}
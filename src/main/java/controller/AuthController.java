@@ -4,6 +4,7 @@ import java.time.Instant;
 
 import dto.ErrorResponseDTO;
 import dto.LoginRequestDTO;
+import dto.RefreshTokenRequestDTO;
 import io.smallrye.mutiny.Uni;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
@@ -12,6 +13,7 @@ import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.WebApplicationException;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import service.AuthService;
@@ -31,6 +33,18 @@ public class AuthController {
         return authService.login(input.getEmail(), input.getPassword())
             .map(dto -> Response.ok(dto).build())
             .onFailure().recoverWithItem(throwable -> {
+                // Si el pool de hashing esta saturado no son credenciales invalidas, el cliente tiene que reintentar
+                if (throwable instanceof WebApplicationException wae
+                        && wae.getResponse().getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                    ErrorResponseDTO err = new ErrorResponseDTO(
+                        Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                        "Service busy",
+                        throwable.getMessage(),
+                        Instant.now(),
+                        null
+                    );
+                    return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(err).build();
+                }
                 ErrorResponseDTO err = new ErrorResponseDTO(
                     Response.Status.UNAUTHORIZED.getStatusCode(),
                     "Invalid credentials",
@@ -41,4 +55,40 @@ public class AuthController {
                 return Response.status(Response.Status.UNAUTHORIZED).entity(err).build();
             });
     }
-}
\ No newline at end of file
+
+    @POST
+    @Path("/refresh")
+    public Uni<Response> refresh(@Valid RefreshTokenRequestDTO input) {
+        return authService.refresh(input.getRefreshToken())
+            .map(dto -> Response.ok(dto).build())
+            .onFailure().recoverWithItem(throwable -> {
+                // Solo un 401 del service es token invalido, si fallo DynamoDB el cliente no tiene que descartar su token
+                if (!(throwable instanceof WebApplicationException wae)
+                        || wae.getResponse().getStatus() != Response.Status.UNAUTHORIZED.getStatusCode()) {
+                    ErrorResponseDTO err = new ErrorResponseDTO(
+                        Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                        "Service unavailable",
+                        throwable.getMessage(),
+                        Instant.now(),
+                        null
+                    );
+                    return Response.status(Response.Status.SERVICE_UNAVAILABLE).entity(err).build();
+                }
+                ErrorResponseDTO err = new ErrorResponseDTO(
+                    Response.Status.UNAUTHORIZED.getStatusCode(),
+                    "Invalid refresh token",
+                    throwable.getMessage(),
+                    Instant.now(),
+                    null
+                );
+                return Response.status(Response.Status.UNAUTHORIZED).entity(err).build();
+            });
+    }
+
+    @POST
+    @Path("/revoke")
+    public Uni<Response> revoke(@Valid RefreshTokenRequestDTO input) {
+        return authService.revoke(input.getRefreshToken())
+            .map(v -> Response.noContent().build());
+    }
+}
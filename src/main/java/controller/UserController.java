@@ -8,15 +8,30 @@ import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 
+import java.io.InputStream;
 import java.time.Instant;
 
+import org.eclipse.microprofile.jwt.JsonWebToken;
 import org.eclipse.microprofile.openapi.annotations.responses.APIResponse;
+import org.jboss.resteasy.reactive.RestMediaType;
+import org.jboss.resteasy.reactive.RestStreamElementType;
 
 import dto.ErrorResponseDTO;
+import dto.UserBatchDeleteRequestDTO;
+import dto.UserBatchGetRequestDTO;
+import dto.UserBatchGetResponseDTO;
 import dto.UserCreateRequestDTO;
+import dto.UserImportResultDTO;
+import dto.UserMapper;
+import dto.UserPageResponseDTO;
+import dto.UserPatchRequestDTO;
 import dto.UserResponseDTO;
+import io.smallrye.common.annotation.Blocking;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import model.User;
+import repository.VersionConflictException;
+import service.UserImportService;
 import service.UserService;
 
 @Path("/users")
@@ -29,12 +44,20 @@ public class UserController {
 	@Inject
 	UserService userService;
 
+    @Inject
+    UserImportService userImportService;
+
+    // Token del request, sub es el id del user
+    @Inject
+    JsonWebToken jwt;
+
     @POST
     @Path("/")
     @RolesAllowed({"ADMIN", "USER"})
     @Consumes(MediaType.APPLICATION_JSON)
     @APIResponse(responseCode = "201", description = "User created successfully")
     @APIResponse(responseCode = "400", description = "Bad request")
+    @APIResponse(responseCode = "503", description = "Password hashing capacity exhausted")
     public Uni<Response> create(@Valid UserCreateRequestDTO input) {
         User user = new User();
         user.setUsername(input.getUsername());
@@ -43,17 +66,24 @@ public class UserController {
 
         return userService.create(user)
             .map(savedUser -> {
-                UserResponseDTO dto = new UserResponseDTO(
-                    savedUser.getId(),
-                    savedUser.getUsername(),
-                    savedUser.getEmail(),
-                    savedUser.getLastLogin(),
-                    savedUser.getCreated(),
-                    savedUser.getModified()
-                );
+                UserResponseDTO dto = UserMapper.toResponse(savedUser);
                 return Response.status(Response.Status.CREATED).entity(dto).build();
             })
             .onFailure().recoverWithItem(throwable -> {
+                // Pool de hashing saturado, ver PasswordHasher
+                if (throwable instanceof WebApplicationException wae
+                        && wae.getResponse().getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                    ErrorResponseDTO err = new ErrorResponseDTO(
+                        Response.Status.SERVICE_UNAVAILABLE.getStatusCode(),
+                        "Service busy",
+                        throwable.getMessage(),
+                        Instant.now(),
+                        null
+                    );
+                    return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                                .entity(err)
+                                .build();
+                }
                 ErrorResponseDTO err = new ErrorResponseDTO(
                     Response.Status.BAD_REQUEST.getStatusCode(),
                     "Error creating user",
@@ -67,30 +97,128 @@ public class UserController {
             });
     }
 
+    // Siempre paginado: sin limit se usa el tamano por defecto, asi la memoria no depende del tamano de la tabla. Se
+    // devuelve el DTO, nunca el User con el hash y los atributos internos
     @GET
     @Path("/")
-    //@RolesAllowed({"ADMIN", "USER"})
+    @RolesAllowed({"ADMIN", "USER"})
     @APIResponse(responseCode = "200", description = "Users founds successfully")
+    @APIResponse(responseCode = "400", description = "Invalid limit or cursor")
     @APIResponse(responseCode = "500", description = "Internal server error")
-    // A manera de debug estoy segira devolviendo user y no el DTO, para poder ver todos los campos y no requiere permisos
-    public Uni<Response> findAll() {
-        return userService.findAll()
-            .map(users -> Response.ok(users).build())
+    public Uni<Response> findAll(@QueryParam("limit") Integer limit, @QueryParam("cursor") String cursor) {
+        return userService.findPage(limit, cursor)
+            .map(page -> {
+                UserPageResponseDTO dto = new UserPageResponseDTO(
+                    page.getItems().stream().map(UserMapper::toResponse).toList(),
+                    page.getNextCursor()
+                );
+                return Response.ok(dto).build();
+            })
             .onFailure().recoverWithItem(throwable -> {
+                Response.Status status = throwable instanceof IllegalArgumentException
+                    ? Response.Status.BAD_REQUEST
+                    : Response.Status.INTERNAL_SERVER_ERROR;
                 ErrorResponseDTO err = new ErrorResponseDTO(
-                    Response.Status.INTERNAL_SERVER_ERROR.getStatusCode(),
+                    status.getStatusCode(),
                     "Error retrieving users",
                     throwable.getMessage(),
                     Instant.now(),
                     null // de momento no devolvemos el user ya que no manejamos sesion
                 );
-                return Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                return Response.status(status)
                             .entity(err)
                             .build();
+            });
+    }
+
+    // Cada usuario se escribe como una linea JSON a medida que llegan las paginas del scan, no se arma la lista en memoria
+    @GET
+    @Path("/stream")
+    @RolesAllowed({"ADMIN", "USER"})
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    @APIResponse(responseCode = "200", description = "Users streamed as NDJSON")
+    public Multi<UserResponseDTO> stream() {
+        return userService.streamAll()
+            .map(UserMapper::toResponse);
+    }
 
+    @POST
+    @Path("/batch-get")
+    @RolesAllowed({"ADMIN", "USER"})
+    @APIResponse(responseCode = "200", description = "Users found, in request order, and missing ids")
+    @APIResponse(responseCode = "400", description = "Bad request")
+    @APIResponse(responseCode = "500", description = "Internal server error")
+    public Uni<Response> batchGet(@Valid UserBatchGetRequestDTO input) {
+        return userService.findAllByIds(input.getIds())
+            .map(result -> {
+                UserBatchGetResponseDTO dto = new UserBatchGetResponseDTO(
+                    result.users().stream().map(UserMapper::toResponse).toList(),
+                    result.missing()
+                );
+                return Response.ok(dto).build();
+            })
+            .onFailure().recoverWithItem(throwable -> {
+                Response.Status status = throwable instanceof IllegalArgumentException
+                    ? Response.Status.BAD_REQUEST
+                    : Response.Status.INTERNAL_SERVER_ERROR;
+                ErrorResponseDTO err = new ErrorResponseDTO(
+                    status.getStatusCode(),
+                    "Error retrieving users",
+                    throwable.getMessage(),
+                    Instant.now(),
+                    null // de momento no devolvemos el user ya que no manejamos sesion
+                );
+                return Response.status(status)
+                            .entity(err)
+                            .build();
             });
     }
 
+    // Borrado masivo por ids, sin leerlos antes. En modo soft devuelve 200 con los ids que no existian
+    @DELETE
+    @Path("/")
+    @RolesAllowed({"ADMIN"})
+    @APIResponse(responseCode = "200", description = "Ids that did not exist (soft delete mode)")
+    @APIResponse(responseCode = "204", description = "Users deleted successfully")
+    @APIResponse(responseCode = "400", description = "Bad request")
+    public Uni<Response> deleteAll(@Valid UserBatchDeleteRequestDTO input) {
+        return userService.deleteAll(input.getIds())
+            .map(missing -> missing.isEmpty()
+                ? Response.noContent().build()
+                : Response.ok(missing).build())
+            .onFailure().recoverWithItem(throwable -> {
+                Response.Status status = throwable instanceof IllegalArgumentException
+                    ? Response.Status.BAD_REQUEST
+                    : Response.Status.INTERNAL_SERVER_ERROR;
+                ErrorResponseDTO err = new ErrorResponseDTO(
+                    status.getStatusCode(),
+                    "Error deleting users",
+                    throwable.getMessage(),
+                    Instant.now(),
+                    null // de momento no devolvemos el user ya que no manejamos sesion
+                );
+                return Response.status(status)
+                            .entity(err)
+                            .build();
+            });
+    }
+
+    // Import masivo: el cuerpo es NDJSON o un array JSON de UserCreateRequestDTO y se responde una linea por fila
+    // @Blocking: el cuerpo se lee de a una fila desde el InputStream (lecturas bloqueantes), fuera del event loop y sin
+    // cargarlo entero en memoria
+    @POST
+    @Path("/import")
+    @Blocking
+    @RolesAllowed({"ADMIN"})
+    @Consumes({RestMediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON})
+    @Produces(RestMediaType.APPLICATION_NDJSON)
+    @RestStreamElementType(MediaType.APPLICATION_JSON)
+    @APIResponse(responseCode = "200", description = "Import results streamed as NDJSON, one per row")
+    public Multi<UserImportResultDTO> importUsers(InputStream body) {
+        return userImportService.importUsers(body);
+    }
+
 
 	@GET
 	@Path("/{id}")
@@ -113,14 +241,7 @@ public class UserController {
                                .entity(err)
                                .build();
                    }
-                    UserResponseDTO dto = new UserResponseDTO(
-                    user.getId(),
-                    user.getUsername(),
-                    user.getEmail(),
-                    user.getLastLogin(),
-                    user.getCreated(),
-                    user.getModified()
-                    );
+                   UserResponseDTO dto = UserMapper.toResponse(user);
                    return Response.ok(dto).build();
                })
                .onFailure().recoverWithItem(throwable -> {
@@ -150,14 +271,7 @@ public class UserController {
                         .entity("User with email " + email + " not found")
                         .build();
                 }
-                UserResponseDTO dto = new UserResponseDTO(
-                    user.getId(),
-                    user.getUsername(),
-                    user.getEmail(),
-                    user.getLastLogin(),
-                    user.getCreated(),
-                    user.getModified()
-                );
+                UserResponseDTO dto = UserMapper.toResponse(user);
                 return Response.ok(dto).build();
             })
             .onFailure().recoverWithItem(throwable -> {
@@ -187,14 +301,7 @@ public class UserController {
                         .entity("User with username " + username + " not found")
                         .build();
                 }
-                UserResponseDTO dto = new UserResponseDTO(
-                    user.getId(),
-                    user.getUsername(),
-                    user.getEmail(),
-                    user.getLastLogin(),
-                    user.getCreated(),
-                    user.getModified()
-                );
+                UserResponseDTO dto = UserMapper.toResponse(user);
                 return Response.ok(dto).build();
             })
             .onFailure().recoverWithItem(throwable -> {
@@ -211,6 +318,74 @@ public class UserController {
             });
     }
 
+    @PATCH
+    @Path("/{id}")
+    @RolesAllowed({"ADMIN", "USER"})
+    @APIResponse(responseCode = "200", description = "User updated successfully")
+    @APIResponse(responseCode = "400", description = "Bad request")
+    @APIResponse(responseCode = "403", description = "Not allowed to update another user")
+    @APIResponse(responseCode = "404", description = "User not found")
+    @APIResponse(responseCode = "409", description = "User was modified concurrently")
+    @APIResponse(responseCode = "503", description = "Password hashing capacity exhausted")
+    public Uni<Response> update(@PathParam("id") String id, @Valid UserPatchRequestDTO input) {
+        // Un USER solo puede cambiar su propia cuenta (password y email), un ADMIN cualquiera
+        if (!jwt.getGroups().contains("ADMIN") && !id.equals(jwt.getSubject())) {
+            ErrorResponseDTO err = new ErrorResponseDTO(
+                Response.Status.FORBIDDEN.getStatusCode(),
+                "Forbidden",
+                "Not allowed to update user with id " + id,
+                Instant.now(),
+                null
+            );
+            return Uni.createFrom().item(Response.status(Response.Status.FORBIDDEN).entity(err).build());
+        }
+
+        User changes = new User();
+        changes.setUsername(input.getUsername());
+        changes.setEmail(input.getEmail());
+        changes.setPassword(input.getPassword());
+
+        return userService.update(id, changes, input.getVersion())
+            .map(user -> {
+                if (user == null) {
+                    ErrorResponseDTO err = new ErrorResponseDTO(
+                        Response.Status.NOT_FOUND.getStatusCode(),
+                        "User not found",
+                        "User with id " + id + " not found",
+                        Instant.now(),
+                        null
+                    );
+                    return Response.status(Response.Status.NOT_FOUND)
+                        .entity(err)
+                        .build();
+                }
+                return Response.ok(UserMapper.toResponse(user)).build();
+            })
+            .onFailure().recoverWithItem(throwable -> {
+                Response.Status status;
+                if (throwable instanceof VersionConflictException) {
+                    status = Response.Status.CONFLICT;
+                } else if (throwable instanceof IllegalArgumentException) {
+                    status = Response.Status.BAD_REQUEST;
+                } else if (throwable instanceof WebApplicationException wae
+                        && wae.getResponse().getStatus() == Response.Status.SERVICE_UNAVAILABLE.getStatusCode()) {
+                    status = Response.Status.SERVICE_UNAVAILABLE;
+                } else {
+                    status = Response.Status.INTERNAL_SERVER_ERROR;
+                }
+                ErrorResponseDTO err = new ErrorResponseDTO(
+                    status.getStatusCode(),
+                    "Error updating user",
+                    throwable.getMessage(),
+                    Instant.now(),
+                    null
+                );
+                return Response.status(status)
+                            .entity(err)
+                            .build();
+            });
+    }
+
     @DELETE
     @Path("/{id}")
     @RolesAllowed({"ADMIN", "USER"})
@@ -9,4 +9,7 @@ public class LoginResponseDTO {
     private String accessToken;
     private String tokenType;
     private long expiresIn;
+    // Para renovar el access token en /auth/refresh sin volver a loguearse, se puede usar una sola vez
+    private String refreshToken;
+    private long refreshExpiresIn;
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package dto;
+
+import java.util.List;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Schema(name = "UserBatchDelete", description = "DTO for deleting many users by id")
+public class UserBatchDeleteRequestDTO {
+
+    @NotEmpty(message = "Ids cannot be empty")
+    @Size(max = 1000, message = "At most 1000 ids per request")
+    private List<String> ids;
+
+}
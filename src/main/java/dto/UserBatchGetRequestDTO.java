@@ -0,0 +1,23 @@
+package dto;
+
+import java.util.List;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Schema(name = "UserBatchGet", description = "DTO for looking up many users by id")
+public class UserBatchGetRequestDTO {
+
+    @NotEmpty(message = "Ids cannot be empty")
+    @Size(max = 500, message = "At most 500 ids per request")
+    private List<String> ids;
+
+}
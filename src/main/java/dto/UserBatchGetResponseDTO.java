@@ -0,0 +1,21 @@
+package dto;
+
+import java.util.List;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(name = "UserBatchGetOutput", description = "DTO for the users found, in request order, and the ids not found")
+public class UserBatchGetResponseDTO {
+
+    private List<UserResponseDTO> users;
+
+    private List<String> missing;
+
+}
@@ -0,0 +1,28 @@
+package dto;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(name = "UserImportResult", description = "DTO for the result of one row of a bulk import")
+public class UserImportResultDTO {
+
+    // Numero de fila dentro del cuerpo, empieza en 1
+    private long row;
+
+    private String email;
+
+    // Solo si se creo
+    private String id;
+
+    // CREATED o FAILED
+    private String status;
+
+    private String error;
+
+}
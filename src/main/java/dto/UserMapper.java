@@ -0,0 +1,22 @@
+package dto;
+
+import model.User;
+
+// Conversion de User a los DTOs de salida en un solo lugar, sin reflection (el password nunca sale)
+public final class UserMapper {
+
+    private UserMapper() {
+    }
+
+    public static UserResponseDTO toResponse(User user) {
+        return new UserResponseDTO(
+            user.getId(),
+            user.getUsername(),
+            user.getEmail(),
+            user.getLastLogin(),
+            user.getCreated(),
+            user.getModified(),
+            user.getVersion()
+        );
+    }
+}
@@ -0,0 +1,22 @@
+package dto;
+
+import java.util.List;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Schema(name = "UserPage", description = "DTO for a page of users and the cursor for the next one")
+public class UserPageResponseDTO {
+
+    private List<UserResponseDTO> items;
+
+    // null cuando es la ultima pagina
+    private String nextCursor;
+
+}
@@ -0,0 +1,31 @@
+package dto;
+
+import org.eclipse.microprofile.openapi.annotations.media.Schema;
+
+import jakarta.validation.constraints.Email;
+import jakarta.validation.constraints.Pattern;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Todos los campos son opcionales, solo se actualizan los que vienen
+@AllArgsConstructor
+@NoArgsConstructor
+@Data
+@Schema(name = "UserPatch", description = "DTO for partially updating a user")
+public class UserPatchRequestDTO {
+
+    @Pattern(regexp = ".*\\S.*", message = "Username cannot be blank")
+    private String username;
+
+    @Pattern(regexp = ".*\\S.*", message = "Password cannot be blank")
+    private String password;
+
+    @Email(message = "Email must be a valid email address")
+    @Pattern(regexp = ".*\\S.*", message = "Email cannot be blank")
+    private String email;
+
+    // Version leida del user, si viene y no coincide con la guardada devuelve 409
+    private Long version;
+
+}
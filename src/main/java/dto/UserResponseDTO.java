@@ -24,4 +24,7 @@ public class UserResponseDTO {
     private Instant created;
     private Instant modified;
 
+    // Para enviarla en el PATCH y detectar modificaciones concurrentes
+    private Long version;
+
 }
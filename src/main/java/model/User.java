@@ -2,6 +2,7 @@ package model;
 
 import lombok.*;
 import model.converter.InstantAttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.annotations.DynamoDbVersionAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbConvertedBy;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
@@ -13,6 +14,8 @@ import java.util.Set;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@Builder(toBuilder = true)
+// El repositorio usa UserTableSchema, las anotaciones de DynamoDB quedan como referencia para UserTableSchemaTest
 @DynamoDbBean
 //@EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class User {
@@ -32,6 +35,16 @@ public class User {
     private Instant lastLogin;
     private Instant created;
     private Instant modified;
+    // Ultimo cambio de password, los refresh tokens emitidos antes dejan de servir
+    private Instant credentialsChangedAt;
+
+    // Borrado logico: deletedAt marca el user como borrado y expiresAt (epoch en segundos) es el atributo TTL de la
+    // tabla, DynamoDB borra el item solo al vencer sin consumir capacidad de escritura
+    private Instant deletedAt;
+    private Long expiresAt;
+
+    // Bloqueo optimista, el VersionedRecordExtension del enhanced client lo incrementa y lo valida en cada putItem
+    private Long version;
 
     @DynamoDbPartitionKey
     //@EqualsAndHashCode.Include
@@ -57,9 +70,30 @@ public class User {
         return modified;
     }
 
+    @DynamoDbConvertedBy(InstantAttributeConverter.class)
+    public Instant getCredentialsChangedAt() {
+        return credentialsChangedAt;
+    }
+
+    @DynamoDbConvertedBy(InstantAttributeConverter.class)
+    public Instant getDeletedAt() {
+        return deletedAt;
+    }
+
+    @DynamoDbVersionAttribute
+    public Long getVersion() {
+        return version;
+    }
+
     @DynamoDbSecondaryPartitionKey(indexNames = "email-index")
     public String getEmail() {
         return email;
     }
 
+    // GSI para buscar por username con query en vez de scan
+    @DynamoDbSecondaryPartitionKey(indexNames = "username-index")
+    public String getUsername() {
+        return username;
+    }
+
 }
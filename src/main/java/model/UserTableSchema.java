@@ -0,0 +1,76 @@
+package model;
+
+import model.converter.InstantAttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.enhanced.dynamodb.extensions.VersionedRecordExtension;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticAttributeTags;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.StaticTableSchema;
+
+import java.time.Instant;
+import java.util.Set;
+
+// Schema de User escrito a mano con getters y setters por method reference, mismo item que TableSchema.fromBean
+// fromBean introspecciona la clase al arrancar y genera lambdas con LambdaMetafactory, lo que ademas en native necesita
+// registrar User para reflection. Con este no hay reflection y el mapeo por item es algo mas barato (ver benchmarks/)
+// Si se agrega un atributo a User hay que agregarlo aca, UserTableSchemaTest compara los dos schemas
+public final class UserTableSchema {
+
+    public static final TableSchema<User> SCHEMA = create();
+
+    private UserTableSchema() {
+    }
+
+    public static TableSchema<User> create() {
+        InstantAttributeConverter instants = new InstantAttributeConverter();
+        return StaticTableSchema.builder(User.class)
+                .newItemSupplier(User::new)
+                .addAttribute(String.class, a -> a.name("id")
+                        .getter(User::getId)
+                        .setter(User::setId)
+                        .tags(StaticAttributeTags.primaryPartitionKey()))
+                .addAttribute(String.class, a -> a.name("username")
+                        .getter(User::getUsername)
+                        .setter(User::setUsername)
+                        .tags(StaticAttributeTags.secondaryPartitionKey("username-index")))
+                .addAttribute(String.class, a -> a.name("email")
+                        .getter(User::getEmail)
+                        .setter(User::setEmail)
+                        .tags(StaticAttributeTags.secondaryPartitionKey("email-index")))
+                .addAttribute(String.class, a -> a.name("password")
+                        .getter(User::getPassword)
+                        .setter(User::setPassword))
+                .addAttribute(EnhancedType.setOf(String.class), a -> a.name("roles")
+                        .getter(User::getRoles)
+                        .setter(User::setRoles))
+                .addAttribute(Instant.class, a -> a.name("lastLogin")
+                        .getter(User::getLastLogin)
+                        .setter(User::setLastLogin)
+                        .attributeConverter(instants))
+                .addAttribute(Instant.class, a -> a.name("created")
+                        .getter(User::getCreated)
+                        .setter(User::setCreated)
+                        .attributeConverter(instants)
+                        .tags(StaticAttributeTags.secondaryPartitionKey("created-index")))
+                .addAttribute(Instant.class, a -> a.name("modified")
+                        .getter(User::getModified)
+                        .setter(User::setModified)
+                        .attributeConverter(instants))
+                .addAttribute(Instant.class, a -> a.name("credentialsChangedAt")
+                        .getter(User::getCredentialsChangedAt)
+                        .setter(User::setCredentialsChangedAt)
+                        .attributeConverter(instants))
+                .addAttribute(Instant.class, a -> a.name("deletedAt")
+                        .getter(User::getDeletedAt)
+                        .setter(User::setDeletedAt)
+                        .attributeConverter(instants))
+                .addAttribute(Long.class, a -> a.name("expiresAt")
+                        .getter(User::getExpiresAt)
+                        .setter(User::setExpiresAt))
+                .addAttribute(Long.class, a -> a.name("version")
+                        .getter(User::getVersion)
+                        .setter(User::setVersion)
+                        .tags(VersionedRecordExtension.AttributeTags.versionAttribute()))
+                .build();
+    }
+}
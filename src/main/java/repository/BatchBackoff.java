@@ -0,0 +1,34 @@
+package repository;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import io.smallrye.mutiny.Uni;
+
+// Backoff exponencial con full jitter para reintentar UnprocessedKeys / UnprocessedItems de los batch de DynamoDB
+// (el SDK no los reintenta, vuelven en la respuesta cuando la particion esta throttleada)
+final class BatchBackoff {
+
+    static final int MAX_ATTEMPTS = 8;
+
+    private static final long BASE_DELAY_MILLIS = 50;
+    private static final long MAX_DELAY_MILLIS = 2_000;
+
+    private BatchBackoff() {}
+
+    static Duration delay(int attempt) {
+        long cap = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt, 16));
+        return Duration.ofMillis(1 + ThreadLocalRandom.current().nextLong(cap));
+    }
+
+    static <T> Uni<T> retry(int attempt, Supplier<Uni<T>> call) {
+        if (attempt >= MAX_ATTEMPTS) {
+            return Uni.createFrom().failure(new IllegalStateException(
+                "Batch request still had unprocessed entries after " + MAX_ATTEMPTS + " attempts"));
+        }
+        return Uni.createFrom().voidItem()
+            .onItem().delayIt().by(delay(attempt))
+            .chain(call);
+    }
+}
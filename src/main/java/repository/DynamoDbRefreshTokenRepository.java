@@ -0,0 +1,158 @@
+package repository;
+
+import config.ReadClient;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+// Refresh tokens en la misma tabla que los users (como los items guarda), DynamoDB los borra por TTL con expiresAt
+//  - REFRESH#<hash>: un token, con su user, su familia, el vencimiento y usedAt cuando ya se roto
+//  - REFRESHFAMILY#<familyId>: la cadena de tokens de un login, con revokedAt si se revoco. Se crea recien en la primera
+//    rotacion o revocacion, asi el login escribe un solo item (un PutItem, no una transaccion de dos)
+// No tienen email asi que los scans y las lecturas de users no los devuelven
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "dynamodb", enableIfMissing = true)
+public class DynamoDbRefreshTokenRepository implements RefreshTokenRepository {
+
+    static final String TOKEN_PREFIX = UserRepository.REFRESH_TOKEN_PREFIX;
+    static final String FAMILY_PREFIX = UserRepository.REFRESH_FAMILY_PREFIX;
+
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final DynamoDbAsyncClient readClient;
+
+    // Una familia revocada antes de su primera rotacion no tiene vencimiento propio, vive lo que dura un token
+    @ConfigProperty(name = "auth.refresh-token.lifespan", defaultValue = "P14D")
+    Duration refreshTokenLifespan;
+
+    @Inject
+    public DynamoDbRefreshTokenRepository(DynamoDbAsyncClient dynamoDbClient, @ReadClient DynamoDbAsyncClient readClient) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.readClient = readClient;
+    }
+
+    // Alta de una familia nueva con su primer token: solo el item del token, el de la familia lo crea rotate o revokeFamily
+    public Uni<Void> createFamily(RefreshToken token) {
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.putItem(r -> r
+                        .tableName(DynamoDbUserRepository.TABLE_NAME)
+                        .item(tokenItem(token))
+                        .conditionExpression("attribute_not_exists(id)")))
+                .replaceWithVoid();
+    }
+
+    public Uni<RefreshToken> findByHash(String tokenHash) {
+        return Uni.createFrom()
+                .completionStage(() -> readClient.getItem(r -> r
+                        .tableName(DynamoDbUserRepository.TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(TOKEN_PREFIX + tokenHash)))
+                        .consistentRead(true)))
+                .map(response -> response.hasItem() ? toToken(response.item()) : null);
+    }
+
+    // Rotacion en una sola transaccion: marca el token actual como usado (solo si no estaba usado ni vencido), crea o
+    // extiende la familia con el TTL del siguiente (solo si no esta revocada) y guarda el siguiente. Devuelve false si
+    // alguna condicion fallo
+    public Uni<Boolean> rotate(RefreshToken current, RefreshToken next, Instant now) {
+        TransactWriteItem markUsed = TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(DynamoDbUserRepository.TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(TOKEN_PREFIX + current.tokenHash())))
+                        .updateExpression("SET usedAt = :now")
+                        .conditionExpression("attribute_exists(id) AND attribute_not_exists(usedAt) AND expiresAt > :nowSeconds")
+                        .expressionAttributeValues(Map.of(
+                                ":now", millis(now),
+                                ":nowSeconds", AttributeValue.fromN(Long.toString(now.getEpochSecond()))))
+                        .build())
+                .build();
+        TransactWriteItem extendFamily = TransactWriteItem.builder()
+                .update(Update.builder()
+                        .tableName(DynamoDbUserRepository.TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(FAMILY_PREFIX + current.familyId())))
+                        .updateExpression("SET expiresAt = :expiresAt, " + DynamoDbUserRepository.GUARD_OWNER + " = :owner")
+                        .conditionExpression("attribute_not_exists(revokedAt)")
+                        .expressionAttributeValues(Map.of(
+                                ":expiresAt", epochSeconds(next.expiresAt()),
+                                ":owner", AttributeValue.fromS(current.userId())))
+                        .build())
+                .build();
+        List<TransactWriteItem> items = List.of(markUsed, extendFamily, newItem(tokenItem(next)));
+
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.transactWriteItems(r -> r.transactItems(items)))
+                .replaceWith(true)
+                .onFailure(TransactionCanceledException.class).recoverWithUni(failure -> {
+                    List<CancellationReason> reasons = ((TransactionCanceledException) failure).cancellationReasons();
+                    boolean conditionFailed = reasons != null && reasons.stream()
+                            .anyMatch(reason -> "ConditionalCheckFailed".equals(reason.code()));
+                    return conditionFailed
+                            ? Uni.createFrom().item(false)
+                            : Uni.createFrom().failure(failure);
+                });
+    }
+
+    // Revoca todos los tokens de la familia, los ya emitidos dejan de poder rotarse. Si la familia todavia no tiene item
+    // (nunca se roto) se crea ya revocada, con un vencimiento que cubre al token mas largo que pudo emitirse
+    public Uni<Void> revokeFamily(String familyId, Instant now) {
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.updateItem(r -> r
+                        .tableName(DynamoDbUserRepository.TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(FAMILY_PREFIX + familyId)))
+                        .updateExpression("SET revokedAt = :now, expiresAt = if_not_exists(expiresAt, :expiresAt)")
+                        .expressionAttributeValues(Map.of(
+                                ":now", millis(now),
+                                ":expiresAt", epochSeconds(now.plus(refreshTokenLifespan))))))
+                .replaceWithVoid();
+    }
+
+    private static TransactWriteItem newItem(Map<String, AttributeValue> item) {
+        return TransactWriteItem.builder()
+                .put(Put.builder()
+                        .tableName(DynamoDbUserRepository.TABLE_NAME)
+                        .item(item)
+                        .conditionExpression("attribute_not_exists(id)")
+                        .build())
+                .build();
+    }
+
+    private static Map<String, AttributeValue> tokenItem(RefreshToken token) {
+        return Map.of(
+                "id", AttributeValue.fromS(TOKEN_PREFIX + token.tokenHash()),
+                DynamoDbUserRepository.GUARD_OWNER, AttributeValue.fromS(token.userId()),
+                "familyId", AttributeValue.fromS(token.familyId()),
+                "issuedAt", millis(token.issuedAt()),
+                "expiresAt", epochSeconds(token.expiresAt()));
+    }
+
+    private static RefreshToken toToken(Map<String, AttributeValue> item) {
+        return new RefreshToken(
+                item.get("id").s().substring(TOKEN_PREFIX.length()),
+                item.get(DynamoDbUserRepository.GUARD_OWNER).s(),
+                item.get("familyId").s(),
+                Instant.ofEpochMilli(Long.parseLong(item.get("issuedAt").n())),
+                Instant.ofEpochSecond(Long.parseLong(item.get("expiresAt").n())),
+                item.containsKey("usedAt") ? Instant.ofEpochMilli(Long.parseLong(item.get("usedAt").n())) : null);
+    }
+
+    private static AttributeValue millis(Instant instant) {
+        return AttributeValue.fromN(Long.toString(instant.toEpochMilli()));
+    }
+
+    // El TTL de DynamoDB espera epoch en segundos
+    private static AttributeValue epochSeconds(Instant instant) {
+        return AttributeValue.fromN(Long.toString(instant.getEpochSecond()));
+    }
+}
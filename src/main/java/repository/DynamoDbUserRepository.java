@@ -0,0 +1,865 @@
+package repository;
+
+import config.ReadClient;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.zero.flow.adapters.AdaptersToFlow;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import model.User;
+import model.UserTableSchema;
+import model.converter.InstantAttributeConverter;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.Delete;
+import software.amazon.awssdk.services.dynamodb.model.DeleteRequest;
+import software.amazon.awssdk.services.dynamodb.model.KeysAndAttributes;
+import software.amazon.awssdk.services.dynamodb.model.Put;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItem;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
+import software.amazon.awssdk.services.dynamodb.model.Update;
+import software.amazon.awssdk.services.dynamodb.model.WriteRequest;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+// Backend por defecto (user.repository.backend=dynamodb): users, guardas de unicidad y refresh tokens en la tabla User
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "dynamodb", enableIfMissing = true)
+public class DynamoDbUserRepository implements UserRepository {
+
+    public static final String TABLE_NAME = "User";
+    static final String EMAIL_INDEX = "email-index";
+    static final String USERNAME_INDEX = "username-index";
+
+    static final int BATCH_GET_SIZE = 100;
+    static final int BATCH_WRITE_SIZE = 25;
+    // TransactWriteItems admite 100 items y cada user ocupa hasta 3
+    static final int USERS_PER_TRANSACTION = 33;
+
+    static final String GUARD_OWNER = "ownerId";
+
+    private static final InstantAttributeConverter INSTANT_CONVERTER = new InstantAttributeConverter();
+
+    // Solo los users tienen email, asi los scans no devuelven los items guarda, ni los borrados logicamente
+    private static final Expression SCAN_FILTER = Expression.builder()
+            .expression("attribute_exists(email) AND attribute_not_exists(deletedAt)")
+            .build();
+
+    private static final Expression NOT_DELETED = Expression.builder()
+            .expression("attribute_not_exists(deletedAt)")
+            .build();
+
+    // Escrituras por dynamoDbClient y lecturas por readClient, cada uno con su presupuesto de reintentos
+    private final DynamoDbAsyncClient dynamoDbClient;
+    private final DynamoDbAsyncClient readClient;
+    private final UserCache userCache;
+    private final SingleFlight<String, User> byIdFlight;
+    private final SingleFlight<String, User> byEmailFlight;
+    private final OperationTimer timer;
+    private final DynamoDbAsyncTable<User> userTable;
+    private final DynamoDbAsyncTable<User> userWriteTable;
+    private final int totalSegments;
+    private final int maxConcurrency;
+
+    @Inject
+    public DynamoDbUserRepository(DynamoDbAsyncClient dynamoDbClient,
+            @ReadClient DynamoDbAsyncClient readClient,
+            DynamoDbEnhancedAsyncClient enhancedClient,
+            UserCache userCache,
+            MeterRegistry registry,
+            @ConfigProperty(name = "user.scan.total-segments", defaultValue = "4") int totalSegments,
+            @ConfigProperty(name = "user.scan.max-concurrency", defaultValue = "4") int maxConcurrency) {
+        this.dynamoDbClient = dynamoDbClient;
+        this.readClient = readClient;
+        this.userCache = userCache;
+        this.byIdFlight = new SingleFlight<>("users.by-id", registry);
+        this.byEmailFlight = new SingleFlight<>("users.by-email", registry);
+        this.timer = new OperationTimer("repository.time", registry);
+        this.userTable = enhancedClient.table(TABLE_NAME, UserTableSchema.SCHEMA);
+        this.userWriteTable = DynamoDbEnhancedAsyncClient.builder()
+                .dynamoDbClient(dynamoDbClient)
+                .build()
+                .table(TABLE_NAME, userTable.tableSchema());
+        this.totalSegments = totalSegments;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @WithSpan
+    public Uni<User> save(User user) {
+        return timer.time("save", Uni.createFrom()
+                .completionStage(() -> userWriteTable.putItem(user)
+                        .thenApply(ignored -> user))
+                .invoke(() -> userCache.invalidate(user)));
+    }
+
+    // UpdateItem parcial solo de lastLogin y modified, no reescribe el hash ni los roles como hacia save en cada login
+    @WithSpan
+    public Uni<Void> updateLastLogin(String userId, Instant lastLogin) {
+        AttributeValue value = INSTANT_CONVERTER.transformFrom(lastLogin);
+        return timer.time("updateLastLogin", Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.updateItem(r -> r
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(userId)))
+                        .updateExpression("SET lastLogin = :lastLogin, modified = :lastLogin")
+                        // attribute_exists(email) y no id: un id de guarda o de refresh token tambien existe
+                        .conditionExpression("attribute_exists(email)")
+                        .expressionAttributeValues(Map.of(":lastLogin", value))))
+                .invoke(() -> userCache.invalidateId(userId))
+                .replaceWithVoid());
+    }
+
+    // Alta en un solo round trip: TransactWriteItems con el user y un item guarda por email y por username, todos con
+    // attribute_not_exists(id). Si otro request gana la carrera la transaccion entera se cancela, a diferencia de
+    // existsById + existsByEmail (el GSI es eventualmente consistente) + save que eran 3 llamadas y dejaban duplicar
+    @WithSpan
+    public Uni<User> create(User user) {
+        return timer.time("create", create(user, true));
+    }
+
+    private Uni<User> create(User user, boolean releaseStaleGuards) {
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.transactWriteItems(r -> r.transactItems(createItems(user))))
+                // Puede haber un miss cacheado para este id o email
+                .invoke(() -> userCache.invalidate(user))
+                .replaceWith(user)
+                .onFailure(TransactionCanceledException.class).recoverWithUni(failure ->
+                        resolveCreateConflict(user, (TransactionCanceledException) failure, releaseStaleGuards));
+    }
+
+    private List<TransactWriteItem> createItems(User user) {
+        // Estas escrituras no pasan por el VersionedRecordExtension, la version inicial la ponemos a mano
+        user.setVersion(1L);
+        List<TransactWriteItem> items = new ArrayList<>();
+        items.add(conditionalPut(userTable.tableSchema().itemToMap(user, true)));
+        items.add(conditionalPut(guardItem(UserRepository.emailGuardId(user.getEmail()), user.getId())));
+        if (user.getUsername() != null) {
+            items.add(conditionalPut(guardItem(UserRepository.usernameGuardId(user.getUsername()), user.getId())));
+        }
+        return items;
+    }
+
+    private static TransactWriteItem conditionalPut(Map<String, AttributeValue> item) {
+        return TransactWriteItem.builder()
+                .put(Put.builder()
+                        .tableName(TABLE_NAME)
+                        .item(item)
+                        .conditionExpression("attribute_not_exists(id)")
+                        .build())
+                .build();
+    }
+
+    // Las razones de cancelacion vienen en el mismo orden que los items de la transaccion: user, email, username
+    private Uni<User> resolveCreateConflict(User user, TransactionCanceledException failure, boolean releaseStaleGuards) {
+        List<CancellationReason> reasons = failure.cancellationReasons();
+        if (conditionFailed(reasons, 0)) {
+            return Uni.createFrom().failure(new IllegalArgumentException(
+                    "User with id " + user.getId() + " already exists"));
+        }
+
+        List<String> conflictingGuards = new ArrayList<>();
+        if (conditionFailed(reasons, 1)) {
+            conflictingGuards.add(UserRepository.emailGuardId(user.getEmail()));
+        }
+        if (conditionFailed(reasons, 2)) {
+            conflictingGuards.add(UserRepository.usernameGuardId(user.getUsername()));
+        }
+        if (conflictingGuards.isEmpty()) {
+            return Uni.createFrom().failure(failure);
+        }
+
+        IllegalArgumentException duplicated = conditionFailed(reasons, 1)
+                ? new IllegalArgumentException("User with email " + user.getEmail() + " already exists")
+                : new IllegalArgumentException("User with username " + user.getUsername() + " already exists");
+        if (!releaseStaleGuards) {
+            return Uni.createFrom().failure(duplicated);
+        }
+
+        // Un guarda puede haber quedado huerfano si su owner se borro por fuera de este repositorio, en ese caso lo
+        // liberamos y reintentamos una sola vez
+        return Multi.createFrom().iterable(conflictingGuards)
+                .onItem().transformToUniAndConcatenate(this::releaseStaleGuard)
+                .collect().asList()
+                .onItem().transformToUni(released -> released.stream().allMatch(Boolean::booleanValue)
+                        ? create(user, false)
+                        : Uni.createFrom().failure(duplicated));
+    }
+
+    private static boolean conditionFailed(List<CancellationReason> reasons, int index) {
+        return reasons != null && reasons.size() > index
+                && "ConditionalCheckFailed".equals(reasons.get(index).code());
+    }
+
+    private Uni<Boolean> releaseStaleGuard(String guardId) {
+        return getRawItem(guardId)
+                .onItem().transformToUni(guard -> {
+                    if (guard == null) {
+                        return Uni.createFrom().item(true);
+                    }
+                    // Sin ownerId no es un guarda nuestro (los ids no se validan, alguien pudo escribir otra cosa ahi):
+                    // no se toca y el alta falla como duplicada
+                    AttributeValue ownerAttribute = guard.get(GUARD_OWNER);
+                    if (ownerAttribute == null || ownerAttribute.s() == null) {
+                        return Uni.createFrom().item(false);
+                    }
+                    String ownerId = ownerAttribute.s();
+                    return getRawItem(ownerId)
+                            // Un owner borrado logicamente tampoco retiene el guarda
+                            .onItem().transformToUni(owner -> owner != null && !owner.containsKey("deletedAt")
+                                    ? Uni.createFrom().item(false)
+                                    : deleteGuard(guardId, ownerId).replaceWith(true));
+                })
+                .onFailure(ConditionalCheckFailedException.class).recoverWithItem(false);
+    }
+
+    private Uni<Map<String, AttributeValue>> getRawItem(String id) {
+        return Uni.createFrom()
+                .completionStage(() -> readClient.getItem(r -> r
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(id)))
+                        .consistentRead(true)))
+                .map(response -> response.hasItem() ? response.item() : null);
+    }
+
+    private Uni<Void> deleteGuard(String guardId, String ownerId) {
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.deleteItem(r -> r
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(guardId)))
+                        .conditionExpression(GUARD_OWNER + " = :owner")
+                        .expressionAttributeValues(Map.of(":owner", AttributeValue.fromS(ownerId)))))
+                .replaceWithVoid();
+    }
+
+    // Crea los guardas de un user que ya existe (filas anteriores al alta transaccional). Devuelve false si algun
+    // guarda ya pertenece a otro user, o sea que ya habia duplicados antes de tener guardas
+    public Uni<Boolean> ensureUniquenessGuards(User user) {
+        List<String> guardIds = new ArrayList<>();
+        guardIds.add(UserRepository.emailGuardId(user.getEmail()));
+        if (user.getUsername() != null) {
+            guardIds.add(UserRepository.usernameGuardId(user.getUsername()));
+        }
+        return Multi.createFrom().iterable(guardIds)
+                .onItem().transformToUniAndConcatenate(guardId -> Uni.createFrom()
+                        .completionStage(() -> dynamoDbClient.putItem(r -> r
+                                .tableName(TABLE_NAME)
+                                .item(guardItem(guardId, user.getId()))
+                                .conditionExpression("attribute_not_exists(id) OR " + GUARD_OWNER + " = :owner")
+                                .expressionAttributeValues(Map.of(":owner", AttributeValue.fromS(user.getId())))))
+                        .replaceWith(true)
+                        .onFailure(ConditionalCheckFailedException.class).recoverWithItem(false))
+                .collect().asList()
+                .map(results -> results.stream().allMatch(Boolean::booleanValue));
+    }
+
+    // Los guardas viven en la misma tabla con id EMAIL#... o USERNAME#... y solo tienen id y ownerId, al no tener email
+    // quedan fuera de los scans (ver SCAN_FILTER) y de los GSI
+    private static Map<String, AttributeValue> guardItem(String guardId, String ownerId) {
+        return Map.of(
+                "id", AttributeValue.fromS(guardId),
+                GUARD_OWNER, AttributeValue.fromS(ownerId));
+    }
+
+    // Antes era un scan secuencial acumulando en un ArrayList, ahora reutiliza el scan segmentado en paralelo
+    public Uni<List<User>> findAll() {
+        return scanAll().collect().asList();
+    }
+
+    // Una sola pagina del scan, el cursor es el LastEvaluatedKey serializado asi el heap no depende de cuantos items tenga la tabla
+    @WithSpan
+    public Uni<UserPage> findPage(int limit, String cursor) {
+        return timer.time("findPage", Uni.createFrom().completionStage(() -> {
+            ScanEnhancedRequest request = ScanEnhancedRequest.builder()
+                    .limit(limit)
+                    .filterExpression(SCAN_FILTER)
+                    .exclusiveStartKey(PageCursor.decode(cursor))
+                    .build();
+
+            CompletableFuture<UserPage> future = new CompletableFuture<>();
+
+            userTable.scan(request).limit(1).subscribe(page -> {
+                future.complete(new UserPage(page.items(), PageCursor.encode(page.lastEvaluatedKey())));
+            }).whenComplete((v, throwable) -> {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    // Si no llego ninguna pagina la tabla esta vacia
+                    future.complete(new UserPage(List.of(), null));
+                }
+            });
+
+            return future;
+        }));
+    }
+
+    // Scan completo dividido en totalSegments segmentos que DynamoDB reparte entre particiones, cada segmento es un
+    // stream independiente y se mezclan con maxConcurrency como tope. El merge respeta el backpressure del subscriber
+    // asi que sirve tanto para findAll como para exports o backfills que procesan item a item
+    public Multi<User> scanAll() {
+        return scanAll(totalSegments);
+    }
+
+    @WithSpan
+    public Multi<User> scanAll(int segments) {
+        if (segments <= 1) {
+            return scanSegment(ScanEnhancedRequest.builder().filterExpression(SCAN_FILTER).build());
+        }
+        return Multi.createFrom().range(0, segments)
+                .onItem().transformToMulti(segment -> scanSegment(ScanEnhancedRequest.builder()
+                        .filterExpression(SCAN_FILTER)
+                        .segment(segment)
+                        .totalSegments(segments)
+                        .build()))
+                .merge(Math.max(1, Math.min(maxConcurrency, segments)));
+    }
+
+    // El SDK pide la siguiente pagina solo cuando el subscriber tiene demanda
+    private Multi<User> scanSegment(ScanEnhancedRequest request) {
+        return Multi.createFrom().deferred(() -> Multi.createFrom().publisher(
+                AdaptersToFlow.publisher(userTable.scan(request).items())));
+    }
+
+    // Lookup de muchos ids con BatchGetItem en bloques de 100 (limite de DynamoDB) en paralelo, reintentando
+    // UnprocessedKeys con backoff. Devuelve solo los que existen, indexados por id
+    @WithSpan
+    public Uni<Map<String, User>> findAllByIds(Collection<String> ids) {
+        List<String> distinct = List.copyOf(new LinkedHashSet<>(ids));
+        if (distinct.isEmpty()) {
+            return Uni.createFrom().item(Map.of());
+        }
+
+        List<Uni<List<Map<String, AttributeValue>>>> chunks = new ArrayList<>();
+        for (int from = 0; from < distinct.size(); from += BATCH_GET_SIZE) {
+            List<Map<String, AttributeValue>> keys = distinct.subList(from, Math.min(from + BATCH_GET_SIZE, distinct.size()))
+                    .stream()
+                    .map(id -> Map.of("id", AttributeValue.fromS(id)))
+                    .toList();
+            chunks.add(batchGet(keys, 0));
+        }
+
+        return timer.time("findAllByIds", Uni.join().all(chunks).andFailFast()
+                .map(results -> {
+                    Map<String, User> users = new HashMap<>();
+                    results.forEach(items -> items.stream()
+                            // Los items guarda no tienen email
+                            .filter(item -> item.containsKey("email") && !item.containsKey("deletedAt"))
+                            .map(item -> userTable.tableSchema().mapToItem(item))
+                            .forEach(user -> users.put(user.getId(), user)));
+                    return users;
+                }));
+    }
+
+    private Uni<List<Map<String, AttributeValue>>> batchGet(List<Map<String, AttributeValue>> keys, int attempt) {
+        return Uni.createFrom()
+                .completionStage(() -> readClient.batchGetItem(r -> r.requestItems(Map.of(
+                        TABLE_NAME, KeysAndAttributes.builder().keys(keys).build()))))
+                .onItem().transformToUni(response -> {
+                    List<Map<String, AttributeValue>> items = new ArrayList<>(
+                            response.responses().getOrDefault(TABLE_NAME, List.of()));
+                    KeysAndAttributes unprocessed = response.unprocessedKeys().get(TABLE_NAME);
+                    if (unprocessed == null || unprocessed.keys().isEmpty()) {
+                        return Uni.createFrom().item(items);
+                    }
+                    return BatchBackoff.retry(attempt, () -> batchGet(unprocessed.keys(), attempt + 1))
+                            .map(rest -> {
+                                items.addAll(rest);
+                                return items;
+                            });
+                });
+    }
+
+    // Alta masiva condicional: cada user va con sus items guarda en TransactWriteItems, con la misma condicion
+    // attribute_not_exists(id) que create. Entran USERS_PER_TRANSACTION users por llamada (limite de 100 items)
+    // Una transaccion cancelada no escribe nada: los users cuya condicion fallo quedan como duplicados y el resto se
+    // reintenta sin ellos, asi una carrera con un alta concurrente nunca pisa un guarda
+    @WithSpan
+    public Uni<List<String>> createAll(List<User> users) {
+        List<Uni<List<String>>> chunks = new ArrayList<>();
+        for (int from = 0; from < users.size(); from += USERS_PER_TRANSACTION) {
+            chunks.add(createChunk(users.subList(from, Math.min(from + USERS_PER_TRANSACTION, users.size())), 0));
+        }
+        if (chunks.isEmpty()) {
+            return Uni.createFrom().item(List.of());
+        }
+
+        return timer.time("createAll", Uni.join().all(chunks).andFailFast()
+                .map(results -> results.stream()
+                        .flatMap(List::stream)
+                        .toList()));
+    }
+
+    private Uni<List<String>> createChunk(List<User> users, int attempt) {
+        List<TransactWriteItem> items = new ArrayList<>();
+        // Para cada item de la transaccion, el user al que pertenece
+        List<Integer> owners = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            for (TransactWriteItem item : createItems(users.get(i))) {
+                items.add(item);
+                owners.add(i);
+            }
+        }
+
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.transactWriteItems(r -> r.transactItems(items)))
+                .invoke(() -> users.forEach(userCache::invalidate))
+                .map(ignored -> Collections.<String>nCopies(users.size(), null))
+                .onFailure(TransactionCanceledException.class).recoverWithUni(failure ->
+                        resolveCreateAllConflicts(users, owners, (TransactionCanceledException) failure, attempt))
+                // Nada de este bloque quedo escrito
+                .onFailure().recoverWithItem(failure -> Collections.nCopies(users.size(), failure.getMessage()));
+    }
+
+    private Uni<List<String>> resolveCreateAllConflicts(List<User> users, List<Integer> owners,
+            TransactionCanceledException failure, int attempt) {
+        List<CancellationReason> reasons = failure.cancellationReasons();
+        List<String> results = new ArrayList<>(Collections.nCopies(users.size(), null));
+        int position = 0;
+        for (int i = 0; i < owners.size(); i++) {
+            int owner = owners.get(i);
+            // Los items de cada user van en orden: user, email, username
+            position = i > 0 && owners.get(i - 1) == owner ? position + 1 : 0;
+            if (results.get(owner) == null && conditionFailed(reasons, i)) {
+                User user = users.get(owner);
+                results.set(owner, switch (position) {
+                    case 0 -> "User with id " + user.getId() + " already exists";
+                    case 1 -> "User with email " + user.getEmail() + " already exists";
+                    default -> "User with username " + user.getUsername() + " already exists";
+                });
+            }
+        }
+
+        List<User> retry = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            if (results.get(i) == null) {
+                retry.add(users.get(i));
+            }
+        }
+        if (retry.isEmpty()) {
+            return Uni.createFrom().item(results);
+        }
+        // Sin condiciones fallidas fue un TransactionConflict o throttling, se reintenta todo con backoff
+        Uni<List<String>> retried = retry.size() == users.size()
+                ? BatchBackoff.retry(attempt, () -> createChunk(users, attempt + 1))
+                : createChunk(retry, attempt);
+        return retried.map(retriedResults -> {
+            int index = 0;
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    results.set(i, retriedResults.get(index++));
+                }
+            }
+            return results;
+        });
+    }
+
+    private Uni<Void> batchWrite(List<WriteRequest> writes, int attempt) {
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.batchWriteItem(r -> r.requestItems(Map.of(TABLE_NAME, writes))))
+                .onItem().transformToUni(response -> {
+                    List<WriteRequest> unprocessed = response.unprocessedItems().get(TABLE_NAME);
+                    if (unprocessed == null || unprocessed.isEmpty()) {
+                        return Uni.createFrom().voidItem();
+                    }
+                    return BatchBackoff.retry(attempt, () -> batchWrite(unprocessed, attempt + 1));
+                });
+    }
+
+    // Borrado solo por llave, sin leer el user antes. La condicion evita borrar guardas o users ya borrados logicamente
+    // y con expectedVersion tambien que alguien lo haya modificado. Devuelve false si no se borro
+    // ALL_OLD nos da el email y username para borrar los guardas sin otra lectura
+    @WithSpan
+    public Uni<Boolean> deleteById(String userId, Long expectedVersion) {
+        Map<String, AttributeValue> values = new HashMap<>();
+        String condition = "attribute_exists(email) AND attribute_not_exists(deletedAt)";
+        if (expectedVersion != null) {
+            condition += " AND #version = :expected";
+            values.put(":expected", AttributeValue.fromN(expectedVersion.toString()));
+        }
+        String conditionExpression = condition;
+
+        return timer.time("deleteById", Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.deleteItem(r -> {
+                    r.tableName(TABLE_NAME)
+                            .key(Map.of("id", AttributeValue.fromS(userId)))
+                            .conditionExpression(conditionExpression)
+                            .returnValues(ReturnValue.ALL_OLD);
+                    if (expectedVersion != null) {
+                        r.expressionAttributeNames(Map.of("#version", "version"))
+                                .expressionAttributeValues(values);
+                    }
+                }))
+                .onItem().transformToUni(response -> {
+                    userCache.invalidateId(userId);
+                    Map<String, AttributeValue> old = response.attributes();
+                    List<Uni<Void>> guards = new ArrayList<>();
+                    if (old.containsKey("email")) {
+                        guards.add(deleteGuardIfOwned(UserRepository.emailGuardId(old.get("email").s()), userId));
+                    }
+                    if (old.containsKey("username")) {
+                        guards.add(deleteGuardIfOwned(UserRepository.usernameGuardId(old.get("username").s()), userId));
+                    }
+                    if (guards.isEmpty()) {
+                        return Uni.createFrom().item(true);
+                    }
+                    return Uni.join().all(guards).andCollectFailures().replaceWith(true)
+                            // Si falla el borrado del guarda queda huerfano y se libera en el proximo create
+                            .onFailure().recoverWithItem(true);
+                })
+                .onFailure(ConditionalCheckFailedException.class).recoverWithItem(false));
+    }
+
+    private Uni<Void> deleteGuardIfOwned(String guardId, String ownerId) {
+        return deleteGuard(guardId, ownerId)
+                .onFailure(ConditionalCheckFailedException.class).recoverWithNull();
+    }
+
+    // UpdateItem parcial: solo los atributos presentes en el UserUpdate, incrementando la version. Si cambia el email o
+    // el username hay que mover los guardas, para eso se lee el user (lectura consistente) y se escribe todo en una
+    // transaccion. Devuelve null si el user no existe
+    @WithSpan
+    public Uni<User> update(String userId, UserUpdate update) {
+        if (update.changesUniqueAttributes()) {
+            return updateWithGuards(userId, update);
+        }
+
+        UpdateParts parts = updateParts(update);
+        String condition = "attribute_exists(email) AND attribute_not_exists(deletedAt)";
+        if (update.getExpectedVersion() != null) {
+            condition += " AND #version = :expected";
+            parts.values().put(":expected", AttributeValue.fromN(update.getExpectedVersion().toString()));
+        }
+        String conditionExpression = condition;
+
+        return timer.time("update", Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.updateItem(r -> r
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(userId)))
+                        .updateExpression(parts.expression())
+                        .conditionExpression(conditionExpression)
+                        .expressionAttributeNames(parts.names())
+                        .expressionAttributeValues(parts.values())
+                        .returnValues(ReturnValue.ALL_NEW)))
+                .map(response -> userTable.tableSchema().mapToItem(response.attributes()))
+                .invoke(user -> userCache.invalidate(user))
+                .onFailure(ConditionalCheckFailedException.class).recoverWithUni(failure ->
+                        // Distinguimos si no existe o si la version no coincide
+                        update.getExpectedVersion() == null
+                                ? Uni.createFrom().nullItem()
+                                : getRawItem(userId).onItem().transformToUni(item -> isLiveUser(item)
+                                        ? Uni.createFrom().failure(new VersionConflictException(userId))
+                                        : Uni.createFrom().nullItem())));
+    }
+
+    private Uni<User> updateWithGuards(String userId, UserUpdate update) {
+        return getRawItem(userId).onItem().transformToUni(item -> {
+            if (!isLiveUser(item)) {
+                return Uni.createFrom().nullItem();
+            }
+            User current = userTable.tableSchema().mapToItem(item);
+            if (update.getExpectedVersion() != null && !update.getExpectedVersion().equals(current.getVersion())) {
+                return Uni.createFrom().failure(new VersionConflictException(userId));
+            }
+
+            UpdateParts parts = updateParts(update);
+            // attribute_exists(email): si lo borran entre la lectura y la transaccion el UpdateItem no crea un user a medias
+            String condition;
+            if (current.getVersion() == null) {
+                condition = "attribute_exists(email) AND attribute_not_exists(deletedAt) AND attribute_not_exists(#version)";
+            } else {
+                condition = "attribute_exists(email) AND attribute_not_exists(deletedAt) AND #version = :expected";
+                parts.values().put(":expected", AttributeValue.fromN(current.getVersion().toString()));
+            }
+
+            // Orden: update del user, despues por cada guarda que cambia el borrado del viejo y el alta del nuevo
+            List<TransactWriteItem> items = new ArrayList<>();
+            items.add(TransactWriteItem.builder()
+                    .update(Update.builder()
+                            .tableName(TABLE_NAME)
+                            .key(Map.of("id", AttributeValue.fromS(userId)))
+                            .updateExpression(parts.expression())
+                            .conditionExpression(condition)
+                            .expressionAttributeNames(parts.names())
+                            .expressionAttributeValues(parts.values())
+                            .build())
+                    .build());
+            int emailGuardIndex = -1;
+            int usernameGuardIndex = -1;
+            if (update.getEmail() != null && !update.getEmail().equals(current.getEmail())) {
+                items.add(guardDelete(UserRepository.emailGuardId(current.getEmail()), userId));
+                emailGuardIndex = items.size();
+                items.add(conditionalPut(guardItem(UserRepository.emailGuardId(update.getEmail()), userId)));
+            }
+            if (update.getUsername() != null && !update.getUsername().equals(current.getUsername())) {
+                if (current.getUsername() != null) {
+                    items.add(guardDelete(UserRepository.usernameGuardId(current.getUsername()), userId));
+                }
+                usernameGuardIndex = items.size();
+                items.add(conditionalPut(guardItem(UserRepository.usernameGuardId(update.getUsername()), userId)));
+            }
+            int emailIndex = emailGuardIndex;
+            int usernameIndex = usernameGuardIndex;
+
+            return Uni.createFrom()
+                    .completionStage(() -> dynamoDbClient.transactWriteItems(r -> r.transactItems(items)))
+                    .map(ignored -> update.applyTo(current))
+                    // El email viejo y el nuevo (puede haber un miss cacheado)
+                    .invoke(updated -> {
+                        userCache.invalidate(current);
+                        userCache.invalidateEmail(updated.getEmail());
+                    })
+                    .onFailure(TransactionCanceledException.class).recoverWithUni(failure -> {
+                        List<CancellationReason> reasons = ((TransactionCanceledException) failure).cancellationReasons();
+                        if (conditionFailed(reasons, 0)) {
+                            // Como en update: si ya no existe es un not found, si sigue vivo cambio la version
+                            return getRawItem(userId).onItem().transformToUni(latest -> isLiveUser(latest)
+                                    ? Uni.createFrom().failure(new VersionConflictException(userId))
+                                    : Uni.createFrom().nullItem());
+                        }
+                        if (emailIndex > 0 && conditionFailed(reasons, emailIndex)) {
+                            return Uni.createFrom().failure(
+                                    new IllegalArgumentException("User with email " + update.getEmail() + " already exists"));
+                        }
+                        if (usernameIndex > 0 && conditionFailed(reasons, usernameIndex)) {
+                            return Uni.createFrom().failure(
+                                    new IllegalArgumentException("User with username " + update.getUsername() + " already exists"));
+                        }
+                        return Uni.createFrom().failure(failure);
+                    });
+        });
+    }
+
+    private static boolean isLiveUser(Map<String, AttributeValue> item) {
+        return item != null && item.containsKey("email") && !item.containsKey("deletedAt");
+    }
+
+    // SET de cada atributo presente mas el incremento de version, todos con expression attribute names por si alguno
+    // es palabra reservada
+    private record UpdateParts(List<String> sets, Map<String, String> names, Map<String, AttributeValue> values) {
+
+        String expression() {
+            return "SET " + String.join(", ", sets);
+        }
+    }
+
+    private UpdateParts updateParts(UserUpdate update) {
+        UpdateParts parts = new UpdateParts(new ArrayList<>(), new HashMap<>(), new HashMap<>());
+        if (update.getUsername() != null) {
+            setAttribute(parts, "username", AttributeValue.fromS(update.getUsername()));
+        }
+        if (update.getEmail() != null) {
+            setAttribute(parts, "email", AttributeValue.fromS(update.getEmail()));
+        }
+        if (update.getPassword() != null) {
+            setAttribute(parts, "password", AttributeValue.fromS(update.getPassword()));
+        }
+        if (update.getRoles() != null && !update.getRoles().isEmpty()) {
+            setAttribute(parts, "roles", AttributeValue.fromSs(List.copyOf(update.getRoles())));
+        }
+        if (update.getLastLogin() != null) {
+            setAttribute(parts, "lastLogin", INSTANT_CONVERTER.transformFrom(update.getLastLogin()));
+        }
+        if (update.getModified() != null) {
+            setAttribute(parts, "modified", INSTANT_CONVERTER.transformFrom(update.getModified()));
+        }
+        if (update.getCredentialsChangedAt() != null) {
+            setAttribute(parts, "credentialsChangedAt", INSTANT_CONVERTER.transformFrom(update.getCredentialsChangedAt()));
+        }
+        parts.sets().add("#version = if_not_exists(#version, :zero) + :one");
+        parts.names().put("#version", "version");
+        parts.values().put(":zero", AttributeValue.fromN("0"));
+        parts.values().put(":one", AttributeValue.fromN("1"));
+        return parts;
+    }
+
+    private static void setAttribute(UpdateParts parts, String attribute, AttributeValue value) {
+        parts.sets().add("#" + attribute + " = :" + attribute);
+        parts.names().put("#" + attribute, attribute);
+        parts.values().put(":" + attribute, value);
+    }
+
+    // Borrado masivo solo por llave con BatchWriteItem en bloques de 25, sin leer los users antes. Los guardas de email
+    // y username quedan huerfanos y se liberan solos la proxima vez que alguien quiera ese email (ver create)
+    @WithSpan
+    public Uni<Void> deleteAllByIds(Collection<String> ids) {
+        try {
+            UserRepository.checkNotReserved(ids);
+        } catch (IllegalArgumentException e) {
+            return Uni.createFrom().failure(e);
+        }
+        List<WriteRequest> deletes = new LinkedHashSet<>(ids).stream()
+                .map(id -> WriteRequest.builder()
+                        .deleteRequest(DeleteRequest.builder()
+                                .key(Map.of("id", AttributeValue.fromS(id)))
+                                .build())
+                        .build())
+                .toList();
+
+        List<Uni<Void>> chunks = new ArrayList<>();
+        for (int from = 0; from < deletes.size(); from += BATCH_WRITE_SIZE) {
+            chunks.add(batchWrite(deletes.subList(from, Math.min(from + BATCH_WRITE_SIZE, deletes.size())), 0));
+        }
+        if (chunks.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+
+        return Uni.join().all(chunks).andFailFast()
+                .invoke(() -> ids.forEach(userCache::invalidateId))
+                .replaceWithVoid();
+    }
+
+    // Borrado logico: marca deletedAt y el TTL expiresAt con un UpdateItem por id (BatchWriteItem no admite updates),
+    // hasta concurrency en paralelo. Devuelve los ids que no existian
+    @WithSpan
+    public Uni<List<String>> softDeleteAllByIds(Collection<String> ids, Instant deletedAt, Instant expiresAt, int concurrency) {
+        return Multi.createFrom().iterable(new LinkedHashSet<>(ids))
+                .onItem().transformToUni(id -> softDelete(id, deletedAt, expiresAt)
+                        .map(deleted -> Map.entry(id, deleted)))
+                .merge(concurrency)
+                .filter(result -> !result.getValue())
+                .map(Map.Entry::getKey)
+                .collect().asList()
+                .invoke(() -> ids.forEach(userCache::invalidateId));
+    }
+
+    private Uni<Boolean> softDelete(String id, Instant deletedAt, Instant expiresAt) {
+        return Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.updateItem(r -> r
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(id)))
+                        .updateExpression("SET deletedAt = :deletedAt, expiresAt = :expiresAt")
+                        // Solo users (los guardas no tienen email) que no esten ya borrados
+                        .conditionExpression("attribute_exists(email) AND attribute_not_exists(deletedAt)")
+                        .expressionAttributeValues(Map.of(
+                                ":deletedAt", INSTANT_CONVERTER.transformFrom(deletedAt),
+                                ":expiresAt", AttributeValue.fromN(Long.toString(expiresAt.getEpochSecond()))))))
+                .replaceWith(true)
+                .onFailure(ConditionalCheckFailedException.class).recoverWithItem(false);
+    }
+
+    // Pasa primero por la cache (UserCache) y si no esta, las llamadas concurrentes por el mismo id comparten un solo
+    // getItem (SingleFlight). Como el User es compartido cada caller recibe su copia
+    @WithSpan
+    public Uni<User> findById(String userId) {
+        return timer.time("findById", userCache.getById(userId, () -> byIdFlight.execute(userId, () -> loadById(userId))
+                .map(UserCache::copy)));
+    }
+
+    // Esto es asi por que es get por PK Partition Key sin SortKey, si tenia sortkey deberiamos de buildear la llave con la sortkey o esperar ya la llave como param
+    private Uni<User> loadById(String userId) {
+        Key key = Key.builder()
+                .partitionValue(userId)
+                .build();
+        return Uni.createFrom()
+                .completionStage(() -> userTable.getItem(r -> r.key(key)))
+                // Los items guarda y refresh token comparten la tabla pero no tienen email
+                .map(user -> user == null || user.getEmail() == null || user.getDeletedAt() != null ? null : user);
+    }
+
+    @WithSpan
+    public Uni<User> findByEmail(String email) {
+        return timer.time("findByEmail", userCache.getByEmail(email, () -> byEmailFlight.execute(email, () -> loadByEmail(email))
+                .map(UserCache::copy)));
+    }
+
+    // TAG: INVESTIGAR
+    // Esto es asi utilizando un GSI (Global Secondary Index) se predefine
+    private Uni<User> loadByEmail(String email) {
+        return Uni.createFrom().completionStage(() -> {
+            CompletableFuture<User> future = new CompletableFuture<>();
+
+            var index = userTable.index(EMAIL_INDEX);
+            Key key = Key.builder().partitionValue(email).build();
+
+            // Sin limit(1) porque el limit se aplica antes del filtro de borrados
+            index.query(r -> r
+                    .queryConditional(
+                            QueryConditional.keyEqualTo(key))
+                    .filterExpression(NOT_DELETED)
+            ).subscribe(page -> {
+                future.complete(page.items().stream().findFirst().orElse(null));
+            }).exceptionally(throwable -> {
+                future.completeExceptionally(throwable);
+                return null;
+            });
+
+            return future;
+        });
+    }
+
+    // Antes era un scan con filtro que solo miraba la primera pagina, ahora es una query sobre el GSI username-index
+    @WithSpan
+    public Uni<User> findByUsername(String username) {
+        return timer.time("findByUsername", Uni.createFrom().completionStage(() -> {
+            CompletableFuture<User> future = new CompletableFuture<>();
+
+            var index = userTable.index(USERNAME_INDEX);
+            Key key = Key.builder().partitionValue(username).build();
+
+            // Sin limit(1) porque el limit se aplica antes del filtro de borrados
+            index.query(r -> r
+                    .queryConditional(
+                            QueryConditional.keyEqualTo(key))
+                    .filterExpression(NOT_DELETED)
+            ).subscribe(page -> {
+                future.complete(page.items().stream().findFirst().orElse(null));
+            }).whenComplete((v, throwable) -> {
+                if (throwable != null) {
+                    future.completeExceptionally(throwable);
+                } else {
+                    future.complete(null);
+                }
+            });
+
+            return future;
+        }));
+    }
+
+    // Borra el user junto con sus guardas, el guarda solo se borra si sigue siendo de este user
+    @WithSpan
+    public Uni<Void> delete(User user) {
+        List<TransactWriteItem> items = new ArrayList<>();
+        items.add(TransactWriteItem.builder()
+                .delete(Delete.builder()
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(user.getId())))
+                        .build())
+                .build());
+        items.add(guardDelete(UserRepository.emailGuardId(user.getEmail()), user.getId()));
+        if (user.getUsername() != null) {
+            items.add(guardDelete(UserRepository.usernameGuardId(user.getUsername()), user.getId()));
+        }
+        return timer.time("delete", Uni.createFrom()
+                .completionStage(() -> dynamoDbClient.transactWriteItems(r -> r.transactItems(items)))
+                .invoke(() -> userCache.invalidate(user))
+                .replaceWithVoid());
+    }
+
+    private static TransactWriteItem guardDelete(String guardId, String ownerId) {
+        return TransactWriteItem.builder()
+                .delete(Delete.builder()
+                        .tableName(TABLE_NAME)
+                        .key(Map.of("id", AttributeValue.fromS(guardId)))
+                        .conditionExpression("attribute_not_exists(id) OR " + GUARD_OWNER + " = :owner")
+                        .expressionAttributeValues(Map.of(":owner", AttributeValue.fromS(ownerId)))
+                        .build())
+                .build();
+    }
+
+}
@@ -0,0 +1,507 @@
+package repository;
+
+import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.logging.Log;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import model.User;
+
+// Backend embebido (user.repository.backend=embedded) para despliegues de un solo nodo sin DynamoDB
+// Todo el estado vive en memoria: el indice primario por id (ordenado, para paginar con cursor) y los indices hash por
+// email y por username, que cumplen el papel de los items guarda. Cada escritura se agrega a UserLog antes de tocar la
+// memoria, al arrancar se reconstruye todo reproduciendo el log
+// Las escrituras corren en un unico hilo propio (unicidad y version se validan ahi, sin locks) y nunca en el event loop
+// del request: el log puede hacer force() o remapear el archivo. Las lecturas no bloquean y no salen del proceso, por
+// eso no hay UserCache ni SingleFlight
+// El log se compacta cuando mas de compaction.garbage-ratio de lo escrito son versiones viejas: se reescribe en otro
+// hilo mientras siguen las escrituras, y el hilo de escrituras solo agrega la cola escrita entretanto y cambia el
+// archivo. Los borrados logicos se purgan al vencer expiresAt como hace el TTL de DynamoDB
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "embedded")
+public class EmbeddedUserRepository implements UserRepository {
+
+    private final ConcurrentSkipListMap<String, User> users = new ConcurrentSkipListMap<>();
+    private final Map<String, String> idsByEmail = new ConcurrentHashMap<>();
+    private final Map<String, String> idsByUsername = new ConcurrentHashMap<>();
+    // Lo que ocupa en el log el registro vigente de cada id, la diferencia con el tamano del log es basura
+    private final Map<String, Integer> recordSizes = new HashMap<>();
+    private long liveBytes;
+
+    // Solo el hilo de escrituras toca el log, recordSizes, liveBytes y compacting
+    private final ExecutorService writer =
+            Executors.newSingleThreadExecutor(task -> new Thread(task, "embedded-user-writer"));
+    private final ExecutorService compactor =
+            Executors.newSingleThreadExecutor(task -> new Thread(task, "embedded-user-compactor"));
+    private boolean compacting;
+
+    private final UserLog log;
+    private final OperationTimer timer;
+    private final long compactionMinSize;
+    private final double compactionGarbageRatio;
+
+    @Inject
+    public EmbeddedUserRepository(
+            @ConfigProperty(name = "user.embedded.path", defaultValue = "data/users.log") String path,
+            @ConfigProperty(name = "user.embedded.initial-size", defaultValue = "67108864") long initialSize,
+            // true: force() en cada escritura, sobrevive a una caida del sistema operativo y no solo del proceso
+            @ConfigProperty(name = "user.embedded.fsync", defaultValue = "false") boolean fsync,
+            @ConfigProperty(name = "user.embedded.compaction.min-size", defaultValue = "16777216") long compactionMinSize,
+            @ConfigProperty(name = "user.embedded.compaction.garbage-ratio", defaultValue = "0.5") double compactionGarbageRatio,
+            MeterRegistry registry) {
+        this.compactionMinSize = compactionMinSize;
+        this.compactionGarbageRatio = compactionGarbageRatio;
+        this.timer = new OperationTimer("repository.time", registry);
+        this.log = UserLog.open(Path.of(path), initialSize, fsync, this::replay);
+        long nowSeconds = Instant.now().getEpochSecond();
+        expiredIds(nowSeconds).forEach(this::delete);
+
+        Gauge.builder("user.embedded.users", users, Map::size).register(registry);
+        Gauge.builder("user.embedded.log.bytes", this, repository -> repository.log.size()).register(registry);
+    }
+
+    private void replay(UserLog.Entry entry) {
+        if (entry.user() == null) {
+            remove(entry.id());
+        } else {
+            apply(entry.user());
+        }
+        track(entry.id(), entry.user() == null ? 0 : entry.size());
+    }
+
+    // Primero termina una compactacion en curso (su ultimo paso corre en el hilo de escrituras), despues las escrituras
+    // pendientes
+    @PreDestroy
+    void close() {
+        shutdown(compactor);
+        shutdown(writer);
+        log.close();
+    }
+
+    private static void shutdown(ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                Log.warn("Embedded user repository did not finish pending work on shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Todas las escrituras pasan por aca: se validan y se escriben en el log en el hilo de escrituras, el resultado se
+    // emite en el pool de workers para que el codigo del caller no ocupe ese hilo
+    private <T> Uni<T> write(String operation, Supplier<T> change) {
+        return timer.time(operation, Uni.createFrom().item(() -> {
+                    T result = change.get();
+                    compactIfNeeded();
+                    return result;
+                })
+                .runSubscriptionOn(writer)
+                .emitOn(Infrastructure.getDefaultWorkerPool()));
+    }
+
+    private <T> Uni<T> read(String operation, Supplier<T> query) {
+        return timer.time(operation, Uni.createFrom().item(query));
+    }
+
+    private void put(User user) {
+        track(user.getId(), log.appendPut(user));
+        User previous = users.get(user.getId());
+        if (previous != null) {
+            releaseIndexes(previous);
+        }
+        apply(user);
+    }
+
+    private void delete(String id) {
+        log.appendDelete(id);
+        track(id, 0);
+        remove(id);
+    }
+
+    private void apply(User user) {
+        User previous = users.put(user.getId(), user);
+        if (previous != null) {
+            releaseIndexes(previous);
+        }
+        // Como en DynamoDB, un user borrado logicamente no retiene su email ni su username
+        if (user.getDeletedAt() == null) {
+            idsByEmail.put(user.getEmail(), user.getId());
+            if (user.getUsername() != null) {
+                idsByUsername.put(user.getUsername(), user.getId());
+            }
+        }
+    }
+
+    private void remove(String id) {
+        User previous = users.remove(id);
+        if (previous != null) {
+            releaseIndexes(previous);
+        }
+    }
+
+    private void releaseIndexes(User user) {
+        idsByEmail.remove(user.getEmail(), user.getId());
+        if (user.getUsername() != null) {
+            idsByUsername.remove(user.getUsername(), user.getId());
+        }
+    }
+
+    private void track(String id, int size) {
+        Integer previous = size == 0 ? recordSizes.remove(id) : recordSizes.put(id, size);
+        liveBytes += size - (previous == null ? 0 : previous);
+    }
+
+    // Solo programa la compactacion, la escritura que la dispara no la espera
+    private void compactIfNeeded() {
+        long total = log.size();
+        if (compacting || total < compactionMinSize || total - liveBytes <= total * compactionGarbageRatio) {
+            return;
+        }
+        compacting = true;
+        int from = log.mark();
+        // Los User del indice no se modifican nunca (cada cambio guarda una copia nueva), asi la foto se puede leer
+        // desde otro hilo
+        List<User> snapshot = new ArrayList<>(users.values());
+        // Durante el cierre el compactador ya no acepta tareas: la escritura que llego hasta aca ya esta en el log y no
+        // tiene que fallar por eso, se compacta en el proximo arranque
+        try {
+            compactor.execute(() -> compact(snapshot, from, total));
+        } catch (RejectedExecutionException e) {
+            compacting = false;
+        }
+    }
+
+    private void compact(List<User> snapshot, int from, long total) {
+        UserLog.Compacted compacted;
+        try {
+            compacted = log.writeCompacted(snapshot);
+        } catch (RuntimeException e) {
+            Log.warnf(e, "User log compaction failed");
+            try {
+                writer.execute(() -> compacting = false);
+            } catch (RejectedExecutionException ignored) {
+                // Cerrando, ya no hay escrituras que puedan compactar
+            }
+            return;
+        }
+        try {
+            writer.execute(() -> finishCompaction(compacted, from, total));
+        } catch (RejectedExecutionException e) {
+            log.abortCompaction(compacted);
+        }
+    }
+
+    private void finishCompaction(UserLog.Compacted compacted, int from, long before) {
+        try {
+            List<UserLog.Entry> tail = log.finishCompaction(compacted, from);
+            recordSizes.clear();
+            liveBytes = 0;
+            compacted.sizes().forEach(this::track);
+            tail.forEach(entry -> track(entry.id(), entry.user() == null ? 0 : entry.size()));
+            Log.infof("Compacted user log from %d to %d bytes", before, log.size());
+        } catch (RuntimeException e) {
+            Log.warnf(e, "User log compaction failed");
+            return;
+        } finally {
+            compacting = false;
+        }
+        compactIfNeeded();
+    }
+
+    // Lo que en DynamoDB hace el TTL sobre expiresAt. La busqueda corre en el hilo del scheduler, el hilo de escrituras
+    // solo borra los que siguen vencidos
+    @Scheduled(every = "${user.embedded.purge-interval:1m}")
+    void purgeExpired() {
+        long nowSeconds = Instant.now().getEpochSecond();
+        List<String> expired = expiredIds(nowSeconds);
+        if (expired.isEmpty()) {
+            return;
+        }
+        try {
+            writer.execute(() -> {
+                for (String id : expired) {
+                    User user = users.get(id);
+                    if (user != null && isExpired(user, nowSeconds)) {
+                        delete(id);
+                    }
+                }
+                compactIfNeeded();
+            });
+        } catch (RejectedExecutionException e) {
+            // Cerrando, los vencidos se purgan en el proximo arranque
+        }
+    }
+
+    private List<String> expiredIds(long nowSeconds) {
+        return users.values().stream()
+                .filter(user -> isExpired(user, nowSeconds))
+                .map(User::getId)
+                .toList();
+    }
+
+    private static boolean isExpired(User user, long nowSeconds) {
+        return user.getExpiresAt() != null && user.getExpiresAt() <= nowSeconds;
+    }
+
+    private User live(String id) {
+        User user = id == null ? null : users.get(id);
+        return user == null || user.getDeletedAt() != null ? null : user;
+    }
+
+    // Los User del indice no se comparten con los callers
+    private static User copy(User user) {
+        return UserCache.copy(user);
+    }
+
+    private void checkUnique(String id, String email, String username) {
+        String emailOwner = email == null ? null : idsByEmail.get(email);
+        if (emailOwner != null && !emailOwner.equals(id)) {
+            throw new IllegalArgumentException("User with email " + email + " already exists");
+        }
+        String usernameOwner = username == null ? null : idsByUsername.get(username);
+        if (usernameOwner != null && !usernameOwner.equals(id)) {
+            throw new IllegalArgumentException("User with username " + username + " already exists");
+        }
+    }
+
+    @Override
+    public Uni<User> save(User user) {
+        return write("save", () -> {
+            User current = users.get(user.getId());
+            Long storedVersion = current == null ? null : current.getVersion();
+            // Mismo contrato que el VersionedRecordExtension del enhanced client
+            if (current != null && user.getVersion() == null || user.getVersion() != null
+                    && !user.getVersion().equals(storedVersion)) {
+                throw new VersionConflictException(user.getId());
+            }
+            checkUnique(user.getId(), user.getEmail(), user.getUsername());
+            User stored = copy(user);
+            stored.setVersion(storedVersion == null ? 1L : storedVersion + 1);
+            put(stored);
+            return user;
+        });
+    }
+
+    @Override
+    public Uni<Void> updateLastLogin(String userId, Instant lastLogin) {
+        return write("updateLastLogin", () -> {
+            User current = users.get(userId);
+            if (current == null) {
+                throw new IllegalArgumentException("User with id " + userId + " does not exist");
+            }
+            User updated = copy(current);
+            updated.setLastLogin(lastLogin);
+            updated.setModified(lastLogin);
+            put(updated);
+            return null;
+        });
+    }
+
+    @Override
+    public Uni<User> create(User user) {
+        return write("create", () -> {
+            insert(user);
+            return user;
+        });
+    }
+
+    private void insert(User user) {
+        if (users.containsKey(user.getId())) {
+            throw new IllegalArgumentException("User with id " + user.getId() + " already exists");
+        }
+        checkUnique(user.getId(), user.getEmail(), user.getUsername());
+        user.setVersion(1L);
+        put(copy(user));
+    }
+
+    @Override
+    public Uni<List<User>> findAll() {
+        return scanAll().collect().asList();
+    }
+
+    // El cursor es el ultimo id de la pagina anterior, el indice primario esta ordenado por id
+    @Override
+    public Uni<UserPage> findPage(int limit, String cursor) {
+        return read("findPage", () -> {
+            Map<String, User> tail = cursor == null
+                    ? users
+                    : users.tailMap(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8), false);
+            List<User> items = new ArrayList<>(limit);
+            String last = null;
+            boolean more = false;
+            for (User user : tail.values()) {
+                if (user.getDeletedAt() != null) {
+                    continue;
+                }
+                if (items.size() == limit) {
+                    more = true;
+                    break;
+                }
+                items.add(copy(user));
+                last = user.getId();
+            }
+            String next = more
+                    ? Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8))
+                    : null;
+            return new UserPage(items, next);
+        });
+    }
+
+    @Override
+    public Multi<User> scanAll() {
+        return Multi.createFrom().iterable(() -> users.values().iterator())
+                .filter(user -> user.getDeletedAt() == null)
+                .map(EmbeddedUserRepository::copy);
+    }
+
+    // En memoria no hay segmentos que paralelizar
+    @Override
+    public Multi<User> scanAll(int segments) {
+        return scanAll();
+    }
+
+    @Override
+    public Uni<Map<String, User>> findAllByIds(Collection<String> ids) {
+        return read("findAllByIds", () -> {
+            Map<String, User> found = new HashMap<>();
+            for (String id : ids) {
+                User user = live(id);
+                if (user != null) {
+                    found.put(id, copy(user));
+                }
+            }
+            return found;
+        });
+    }
+
+    // Todo el bloque se valida y se escribe dentro del mismo lock, ningun alta concurrente puede tomar un email en el medio
+    @Override
+    public Uni<List<String>> createAll(List<User> batch) {
+        return write("createAll", () -> {
+            List<String> results = new ArrayList<>(batch.size());
+            for (User user : batch) {
+                try {
+                    insert(user);
+                    results.add(null);
+                } catch (IllegalArgumentException e) {
+                    results.add(e.getMessage());
+                }
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public Uni<Boolean> deleteById(String userId, Long expectedVersion) {
+        return write("deleteById", () -> {
+            User current = live(userId);
+            if (current == null || expectedVersion != null && !expectedVersion.equals(current.getVersion())) {
+                return false;
+            }
+            delete(userId);
+            return true;
+        });
+    }
+
+    @Override
+    public Uni<User> update(String userId, UserUpdate update) {
+        return write("update", () -> {
+            User current = live(userId);
+            if (current == null) {
+                return null;
+            }
+            if (update.getExpectedVersion() != null && !update.getExpectedVersion().equals(current.getVersion())) {
+                throw new VersionConflictException(userId);
+            }
+            checkUnique(userId, update.getEmail(), update.getUsername());
+            User updated = update.applyTo(current);
+            put(updated);
+            return copy(updated);
+        });
+    }
+
+    @Override
+    public Uni<Void> deleteAllByIds(Collection<String> ids) {
+        return write("deleteAllByIds", () -> {
+            UserRepository.checkNotReserved(ids);
+            for (String id : new LinkedHashSet<>(ids)) {
+                if (users.containsKey(id)) {
+                    delete(id);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public Uni<List<String>> softDeleteAllByIds(Collection<String> ids, Instant deletedAt, Instant expiresAt, int concurrency) {
+        return write("softDeleteAllByIds", () -> {
+            List<String> missing = new ArrayList<>();
+            for (String id : new LinkedHashSet<>(ids)) {
+                User current = live(id);
+                if (current == null) {
+                    missing.add(id);
+                    continue;
+                }
+                User deleted = copy(current);
+                deleted.setDeletedAt(deletedAt);
+                deleted.setExpiresAt(expiresAt.getEpochSecond());
+                put(deleted);
+            }
+            return missing;
+        });
+    }
+
+    @Override
+    public Uni<User> findById(String userId) {
+        return read("findById", () -> copy(live(userId)));
+    }
+
+    @Override
+    public Uni<User> findByEmail(String email) {
+        return read("findByEmail", () -> copy(live(idsByEmail.get(email))));
+    }
+
+    @Override
+    public Uni<User> findByUsername(String username) {
+        return read("findByUsername", () -> copy(live(idsByUsername.get(username))));
+    }
+
+    @Override
+    public Uni<Void> delete(User user) {
+        return write("delete", () -> {
+            if (users.containsKey(user.getId())) {
+                delete(user.getId());
+            }
+            return null;
+        });
+    }
+}
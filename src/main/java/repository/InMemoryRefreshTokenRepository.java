@@ -0,0 +1,69 @@
+package repository;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Refresh tokens del backend embebido, solo en memoria: al reiniciar se pierden y los clientes vuelven a hacer login
+// Mismas reglas que DynamoDbRefreshTokenRepository, rotate se serializa para que un token no se rote dos veces
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "embedded")
+public class InMemoryRefreshTokenRepository implements RefreshTokenRepository {
+
+    private final Map<String, RefreshToken> tokens = new ConcurrentHashMap<>();
+    // familyId -> revocada
+    private final Map<String, Boolean> families = new ConcurrentHashMap<>();
+
+    public Uni<Void> createFamily(RefreshToken token) {
+        return Uni.createFrom().item(() -> {
+            synchronized (this) {
+                if (families.putIfAbsent(token.familyId(), false) != null
+                        || tokens.putIfAbsent(token.tokenHash(), token) != null) {
+                    throw new IllegalArgumentException("Refresh token family " + token.familyId() + " already exists");
+                }
+            }
+            return null;
+        });
+    }
+
+    public Uni<RefreshToken> findByHash(String tokenHash) {
+        return Uni.createFrom().item(() -> tokens.get(tokenHash));
+    }
+
+    public Uni<Boolean> rotate(RefreshToken current, RefreshToken next, Instant now) {
+        return Uni.createFrom().item(() -> {
+            synchronized (this) {
+                RefreshToken stored = tokens.get(current.tokenHash());
+                if (stored == null || stored.isUsed() || stored.isExpired(now)
+                        || !Boolean.FALSE.equals(families.get(current.familyId()))
+                        || tokens.containsKey(next.tokenHash())) {
+                    return false;
+                }
+                tokens.put(stored.tokenHash(), new RefreshToken(stored.tokenHash(), stored.userId(), stored.familyId(),
+                        stored.issuedAt(), stored.expiresAt(), now));
+                tokens.put(next.tokenHash(), next);
+                return true;
+            }
+        });
+    }
+
+    public Uni<Void> revokeFamily(String familyId, Instant now) {
+        return Uni.createFrom().item(() -> {
+            families.replace(familyId, true);
+            return null;
+        });
+    }
+
+    // Lo que en DynamoDB hace el TTL, las familias se van con su ultimo token
+    @Scheduled(every = "${user.embedded.purge-interval:1m}")
+    synchronized void purgeExpired() {
+        Instant now = Instant.now();
+        tokens.values().removeIf(token -> token.isExpired(now));
+        families.keySet().retainAll(tokens.values().stream().map(RefreshToken::familyId).toList());
+    }
+}
@@ -0,0 +1,38 @@
+package repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.smallrye.mutiny.Uni;
+
+// Timer por operacion para metodos que devuelven Uni: mide desde la suscripcion hasta que termina, con tags operation y
+// outcome (success | failure | cancelled), con histograma para sacar p50/p99 en Prometheus como los de PasswordHasher
+public class OperationTimer {
+
+    private final String name;
+    private final MeterRegistry registry;
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    public OperationTimer(String name, MeterRegistry registry) {
+        this.name = name;
+        this.registry = registry;
+    }
+
+    public <T> Uni<T> time(String operation, Uni<T> call) {
+        return Uni.createFrom().deferred(() -> {
+            Timer.Sample sample = Timer.start(registry);
+            return call.onTermination().invoke((item, failure, cancelled) -> sample.stop(
+                    timer(operation, cancelled ? "cancelled" : failure != null ? "failure" : "success")));
+        });
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + '/' + outcome, key -> Timer.builder(name)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+}
@@ -0,0 +1,82 @@
+package repository;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+// Cursor opaco para paginar: es el LastEvaluatedKey de DynamoDB serializado como "nombre=TIPO:valor&..." en base64 url-safe
+// Solo soportamos S y N que son los unicos tipos posibles en las llaves de la tabla e indices
+public final class PageCursor {
+
+    private PageCursor() {}
+
+    public static String encode(Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder raw = new StringBuilder();
+        lastEvaluatedKey.forEach((name, value) -> {
+            if (raw.length() > 0) {
+                raw.append('&');
+            }
+            String type;
+            String content;
+            if (value.s() != null) {
+                type = "S";
+                content = value.s();
+            } else if (value.n() != null) {
+                type = "N";
+                content = value.n();
+            } else {
+                throw new IllegalStateException("Unsupported key attribute type for " + name);
+            }
+            raw.append(urlEncode(name)).append('=').append(type).append(':').append(urlEncode(content));
+        });
+
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(raw.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Map<String, AttributeValue> decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return null;
+        }
+
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            Map<String, AttributeValue> key = new LinkedHashMap<>();
+            for (String entry : raw.split("&")) {
+                int eq = entry.indexOf('=');
+                int colon = entry.indexOf(':', eq + 1);
+                if (eq <= 0 || colon != eq + 2) {
+                    throw new IllegalArgumentException("Malformed cursor entry");
+                }
+                String name = urlDecode(entry.substring(0, eq));
+                char type = entry.charAt(eq + 1);
+                String content = urlDecode(entry.substring(colon + 1));
+                switch (type) {
+                    case 'S' -> key.put(name, AttributeValue.builder().s(content).build());
+                    case 'N' -> key.put(name, AttributeValue.builder().n(content).build());
+                    default -> throw new IllegalArgumentException("Unsupported cursor attribute type " + type);
+                }
+            }
+            return key;
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    private static String urlEncode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String urlDecode(String value) {
+        return URLDecoder.decode(value, StandardCharsets.UTF_8);
+    }
+}
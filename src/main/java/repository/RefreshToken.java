@@ -0,0 +1,17 @@
+package repository;
+
+import java.time.Instant;
+
+// Refresh token guardado en la tabla User como REFRESH#<sha256 del token>, nunca se guarda el token en claro
+// familyId agrupa todos los tokens que salen de un mismo login, revocar la familia invalida toda la cadena de rotaciones
+public record RefreshToken(String tokenHash, String userId, String familyId, Instant issuedAt, Instant expiresAt,
+        Instant usedAt) {
+
+    public boolean isExpired(Instant now) {
+        return !expiresAt.isAfter(now);
+    }
+
+    public boolean isUsed() {
+        return usedAt != null;
+    }
+}
@@ -0,0 +1,20 @@
+package repository;
+
+import java.time.Instant;
+
+import io.smallrye.mutiny.Uni;
+
+// Refresh tokens por familia (una por login), con el mismo backend que los users (user.repository.backend)
+public interface RefreshTokenRepository {
+
+    // Alta de una familia nueva con su primer token
+    Uni<Void> createFamily(RefreshToken token);
+
+    Uni<RefreshToken> findByHash(String tokenHash);
+
+    // Marca current como usado y guarda next de forma atomica, false si current ya se uso, vencio o la familia se revoco
+    Uni<Boolean> rotate(RefreshToken current, RefreshToken next, Instant now);
+
+    // Los tokens de la familia dejan de poder rotarse
+    Uni<Void> revokeFamily(String familyId, Instant now);
+}
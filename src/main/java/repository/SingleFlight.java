@@ -0,0 +1,57 @@
+package repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.smallrye.mutiny.Uni;
+
+// Deduplica llamadas concurrentes por la misma llave: el primero que llega lanza la carga y los que llegan mientras
+// esta en vuelo se suscriben al mismo Uni (memoize). Cuando termina se saca del mapa, no cachea nada
+// Expone requests, coalesced y el ratio coalesced/requests con el tag name
+public class SingleFlight<K, V> {
+
+    private final Map<K, Uni<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(String name, MeterRegistry registry) {
+        FunctionCounter.builder("repository.single-flight.requests", requests, LongAdder::sum)
+            .tag("name", name)
+            .register(registry);
+        FunctionCounter.builder("repository.single-flight.coalesced", coalesced, LongAdder::sum)
+            .tag("name", name)
+            .register(registry);
+        Gauge.builder("repository.single-flight.ratio", this, SingleFlight::coalescingRatio)
+            .tag("name", name)
+            .register(registry);
+    }
+
+    public Uni<V> execute(K key, Supplier<Uni<V>> loader) {
+        return Uni.createFrom().deferred(() -> {
+            requests.increment();
+            AtomicReference<Uni<V>> created = new AtomicReference<>();
+            Uni<V> shared = inFlight.computeIfAbsent(key, k -> {
+                Uni<V> call = Uni.createFrom().deferred(loader)
+                    .onTermination().invoke(() -> inFlight.remove(k, created.get()))
+                    .memoize().indefinitely();
+                created.set(call);
+                return call;
+            });
+            if (shared != created.get()) {
+                coalesced.increment();
+            }
+            return shared;
+        });
+    }
+
+    double coalescingRatio() {
+        long total = requests.sum();
+        return total == 0 ? 0 : (double) coalesced.sum() / total;
+    }
+}
@@ -0,0 +1,54 @@
+package repository;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+
+// Job de una sola vez para crear los guardas EMAIL#/USERNAME# de los users que existian antes del alta transaccional,
+// sin ellos esos emails podrian volver a registrarse. Se activa con user.uniqueness-guard.backfill.enabled=true y es
+// idempotente. Si dos users ya compartian email o username se loguea para resolverlo a mano
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "dynamodb", enableIfMissing = true)
+public class UniquenessGuardBackfill {
+
+    @Inject
+    DynamoDbUserRepository userRepository;
+
+    @ConfigProperty(name = "user.uniqueness-guard.backfill.enabled", defaultValue = "false")
+    boolean enabled;
+
+    @ConfigProperty(name = "user.uniqueness-guard.backfill.concurrency", defaultValue = "16")
+    int concurrency;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        run().subscribe().with(
+            conflicts -> Log.infof("Uniqueness guard backfill finished, %d conflicting users", conflicts),
+            failure -> Log.error("Uniqueness guard backfill failed", failure));
+    }
+
+    public Uni<Long> run() {
+        AtomicLong conflicts = new AtomicLong();
+        return userRepository.scanAll()
+            .onItem().transformToUni(user -> userRepository.ensureUniquenessGuards(user)
+                .invoke(ok -> {
+                    if (!ok) {
+                        conflicts.incrementAndGet();
+                        Log.warnf("User %s shares email or username with another user", user.getId());
+                    }
+                }))
+            .merge(concurrency)
+            .collect().last()
+            .map(ignored -> conflicts.get());
+    }
+}
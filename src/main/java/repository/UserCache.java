@@ -0,0 +1,188 @@
+package repository;
+
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import model.User;
+
+// Cache read-through en memoria para findById y findByEmail, con maximo de entradas y TTL. Los misses tambien se cachean
+// (Optional.empty) con un TTL mas corto. El repositorio invalida en cada escritura o borrado
+// Los User son mutables (AuthService los modifica) por eso se guardan y se devuelven copias
+// Metricas en /q/metrics como cache_* con cache=users.by-id y cache=users.by-email
+@ApplicationScoped
+public class UserCache {
+
+    @Inject
+    MeterRegistry registry;
+
+    @ConfigProperty(name = "user.cache.enabled", defaultValue = "true")
+    boolean enabled;
+
+    @ConfigProperty(name = "user.cache.max-size", defaultValue = "10000")
+    long maxSize;
+
+    @ConfigProperty(name = "user.cache.ttl", defaultValue = "PT30S")
+    Duration ttl;
+
+    @ConfigProperty(name = "user.cache.negative-ttl", defaultValue = "PT5S")
+    Duration negativeTtl;
+
+    private Cache<String, Optional<User>> byId;
+    private Cache<String, Optional<User>> byEmail;
+
+    // Email de cada user cacheado en byEmail, para invalidar por id sin recorrer la cache
+    private final Map<String, String> emailById = new ConcurrentHashMap<>();
+
+    // Lecturas en curso por llave. Invalidar saca el token y la lectura solo guarda su resultado si el token sigue siendo
+    // el suyo (compare-and-remove), una lectura que empezo antes de una escritura no deja en la cache un user viejo
+    private final Map<String, Object> loadingById = new ConcurrentHashMap<>();
+    private final Map<String, Object> loadingByEmail = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        byId = build().build();
+        byEmail = build()
+            .evictionListener((String email, Optional<User> value, RemovalCause cause) -> forgetEmail(email, value))
+            .build();
+        CaffeineCacheMetrics.monitor(registry, byId, "users.by-id");
+        CaffeineCacheMetrics.monitor(registry, byEmail, "users.by-email");
+    }
+
+    private Caffeine<String, Optional<User>> build() {
+        return Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new Expiry<String, Optional<User>>() {
+                @Override
+                public long expireAfterCreate(String key, Optional<User> value, long currentTime) {
+                    return (value.isPresent() ? ttl : negativeTtl).toNanos();
+                }
+
+                @Override
+                public long expireAfterUpdate(String key, Optional<User> value, long currentTime, long currentDuration) {
+                    return expireAfterCreate(key, value, currentTime);
+                }
+
+                @Override
+                public long expireAfterRead(String key, Optional<User> value, long currentTime, long currentDuration) {
+                    return currentDuration;
+                }
+            })
+            .recordStats();
+    }
+
+    public Uni<User> getById(String id, Supplier<Uni<User>> loader) {
+        return read(byId, loadingById, id, loader);
+    }
+
+    public Uni<User> getByEmail(String email, Supplier<Uni<User>> loader) {
+        return read(byEmail, loadingByEmail, email, loader);
+    }
+
+    private Uni<User> read(Cache<String, Optional<User>> cache, Map<String, Object> loading, String key,
+            Supplier<Uni<User>> loader) {
+        if (!enabled || key == null) {
+            return loader.get();
+        }
+        return Uni.createFrom().deferred(() -> {
+            Optional<User> cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return Uni.createFrom().item(cached.map(UserCache::copy).orElse(null));
+            }
+            Object token = new Object();
+            loading.put(key, token);
+            return loader.get()
+                .map(user -> {
+                    if (loading.remove(key, token)) {
+                        store(cache, key, user);
+                    }
+                    return user;
+                })
+                .onTermination().invoke(() -> loading.remove(key, token));
+        });
+    }
+
+    private void store(Cache<String, Optional<User>> cache, String key, User user) {
+        if (user == null) {
+            if (cache == byEmail) {
+                putEmail(key, Optional.empty());
+            } else {
+                byId.put(key, Optional.empty());
+            }
+            return;
+        }
+        // Un hit por id tambien sirve para el email y al reves
+        byId.put(user.getId(), Optional.of(copy(user)));
+        if (user.getEmail() != null) {
+            putEmail(user.getEmail(), Optional.of(copy(user)));
+        }
+    }
+
+    private void putEmail(String email, Optional<User> value) {
+        Optional<User> previous = byEmail.asMap().put(email, value);
+        forgetEmail(email, previous);
+        value.ifPresent(user -> emailById.put(user.getId(), email));
+    }
+
+    private void forgetEmail(String email, Optional<User> value) {
+        if (value != null && value.isPresent()) {
+            emailById.remove(value.get().getId(), email);
+        }
+    }
+
+    public void invalidate(User user) {
+        if (user == null) {
+            return;
+        }
+        invalidateId(user.getId());
+        if (user.getEmail() != null) {
+            invalidateEmail(user.getEmail());
+        }
+    }
+
+    // Tambien borra la entrada por email del user, por si el email cambio. Si no se conoce su email (borrados masivos
+    // solo por id) se descartan las lecturas por email en curso, que son pocas, en vez de recorrer toda la cache
+    public void invalidateId(String id) {
+        loadingById.remove(id);
+        Optional<User> cached = byId.asMap().remove(id);
+        String email = emailById.get(id);
+        if (email != null) {
+            invalidateEmail(email);
+        }
+        if (cached != null && cached.isPresent() && cached.get().getEmail() != null) {
+            invalidateEmail(cached.get().getEmail());
+        } else if (email == null) {
+            loadingByEmail.clear();
+        }
+    }
+
+    public void invalidateEmail(String email) {
+        loadingByEmail.remove(email);
+        forgetEmail(email, byEmail.asMap().remove(email));
+    }
+
+    static User copy(User user) {
+        if (user == null) {
+            return null;
+        }
+        return user.toBuilder()
+            .roles(user.getRoles() == null ? null : new HashSet<>(user.getRoles()))
+            .build();
+    }
+}
@@ -0,0 +1,396 @@
+package repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import io.quarkus.logging.Log;
+import model.User;
+
+// Log append-only de users en un archivo mapeado en memoria, lo usa EmbeddedUserRepository
+// Formato: cabecera MAGIC + version y despues registros [largo][crc32c][tipo][datos], el largo se escribe ultimo asi un
+// registro cortado por una caida queda con largo 0 o con un crc que no coincide. Al abrir se reproduce el log hasta el
+// primer registro invalido y desde ahi se borra todo hasta el final del archivo
+// Un registro PUT guarda el user completo y un DELETE solo el id, el ultimo registro de cada id es el que vale
+// No es thread safe, EmbeddedUserRepository hace todas las escrituras desde un solo hilo (writeCompacted escribe en
+// otro archivo y puede correr en paralelo)
+final class UserLog implements Closeable {
+
+    private static final int MAGIC = 0x55534c47; // "USLG"
+    private static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 8;
+    // Largo + crc
+    private static final int RECORD_HEADER_SIZE = 8;
+    // MappedByteBuffer se indexa con int
+    private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    // Lo que se reproduce al abrir: user != null es un PUT, si no un DELETE de id. size es lo que ocupa en el log
+    record Entry(String id, User user, int size) {}
+
+    private final Path path;
+    private final long initialSize;
+    private final boolean fsync;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+
+    private UserLog(Path path, long initialSize, boolean fsync) {
+        this.path = path;
+        this.initialSize = initialSize;
+        this.fsync = fsync;
+    }
+
+    // Abre (o crea) el log y pasa cada registro valido a replay en orden
+    static UserLog open(Path path, long initialSize, boolean fsync, Consumer<Entry> replay) {
+        UserLog log = new UserLog(path, initialSize, fsync);
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            // Una compactacion que no llego a reemplazar el log, el log original sigue completo
+            Files.deleteIfExists(compactPath(path));
+            log.map(path, Math.max(initialSize, Files.exists(path) ? Files.size(path) : 0));
+            log.recover(replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open user log " + path, e);
+        }
+        return log;
+    }
+
+    private static Path compactPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".compact");
+    }
+
+    private void map(Path file, long size) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void recover(Consumer<Entry> replay) {
+        if (buffer.getInt(0) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, FORMAT_VERSION);
+            position = HEADER_SIZE;
+            return;
+        }
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported user log format in " + path);
+        }
+
+        position = HEADER_SIZE;
+        int records = 0;
+        while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(position);
+            if (length == 0) {
+                break;
+            }
+            Entry entry = length > 0 && (long) position + RECORD_HEADER_SIZE + length <= buffer.capacity()
+                    ? read(position, length)
+                    : null;
+            if (entry == null) {
+                Log.warnf("Discarding corrupt user log tail at offset %d of %s", position, path);
+                break;
+            }
+            replay.accept(entry);
+            position += entry.size();
+            records++;
+        }
+        clearFrom(position);
+        Log.infof("Replayed %d records from user log %s", records, path);
+    }
+
+    // Todo lo que sigue al ultimo registro valido se borra, no solo el registro cortado: con fsync=false el sistema
+    // operativo puede haber persistido paginas posteriores antes que esta, y esos registros viejos quedarian validos
+    // justo despues de las proximas escrituras. Solo se escriben los bytes que no estan en 0
+    private void clearFrom(int offset) {
+        int end = buffer.capacity();
+        int i = offset;
+        for (; i + Long.BYTES <= end; i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) {
+                buffer.putLong(i, 0);
+            }
+        }
+        for (; i < end; i++) {
+            buffer.put(i, (byte) 0);
+        }
+    }
+
+    private Entry read(int offset, int length) {
+        byte[] payload = new byte[length];
+        buffer.get(offset + RECORD_HEADER_SIZE, payload);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            byte type = in.readByte();
+            int size = RECORD_HEADER_SIZE + length;
+            if (type == DELETE) {
+                return new Entry(in.readUTF(), null, size);
+            }
+            User user = readUser(in);
+            return new Entry(user.getId(), user, size);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    int appendPut(User user) {
+        return append(encode(PUT, user, null));
+    }
+
+    int appendDelete(String id) {
+        return append(encode(DELETE, null, id));
+    }
+
+    // Bytes escritos desde la cabecera, para decidir cuando compactar
+    int size() {
+        return position - HEADER_SIZE;
+    }
+
+    private int append(byte[] payload) {
+        int size = RECORD_HEADER_SIZE + payload.length;
+        ensureCapacity(size);
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        buffer.put(position + RECORD_HEADER_SIZE, payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.putInt(position, payload.length);
+        if (fsync) {
+            buffer.force(position, size);
+        }
+        position += size;
+        return size;
+    }
+
+    private void ensureCapacity(int size) {
+        if (position + size <= buffer.capacity()) {
+            return;
+        }
+        long newSize = Math.min(MAX_SIZE, Math.max((long) buffer.capacity() * 2, (long) position + size));
+        if (position + size > newSize) {
+            throw new IllegalStateException("User log " + path + " is full, compaction did not free enough space");
+        }
+        try {
+            buffer.force();
+            channel.close();
+            map(path, newSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot grow user log " + path, e);
+        }
+    }
+
+    // Compactacion en tres pasos, para que la reescritura no frene las escrituras:
+    //  1. mark(), en el hilo de escrituras: desde donde empieza la cola que se escribe mientras se compacta
+    //  2. writeCompacted(), en otro hilo: escribe los users vivos en un archivo .compact (no toca el log actual)
+    //  3. finishCompaction(), en el hilo de escrituras: agrega la cola al archivo nuevo y lo cambia por el actual con un
+    //     rename atomico. Si algo se corta antes del rename el log original queda intacto
+    int mark() {
+        return position;
+    }
+
+    // El archivo nuevo y lo que ocupa ahi el registro de cada id
+    record Compacted(UserLog log, Map<String, Integer> sizes) {}
+
+    Compacted writeCompacted(Collection<User> users) {
+        Path target = compactPath(path);
+        UserLog compacted = new UserLog(target, initialSize, false);
+        try {
+            Files.deleteIfExists(target);
+            compacted.map(target, initialSize);
+            compacted.recover(entry -> { });
+            Map<String, Integer> sizes = new HashMap<>();
+            for (User user : users) {
+                sizes.put(user.getId(), compacted.appendPut(user));
+            }
+            return new Compacted(compacted, sizes);
+        } catch (IOException e) {
+            abortCompaction(new Compacted(compacted, Map.of()));
+            throw new UncheckedIOException("Cannot compact user log " + path, e);
+        } catch (RuntimeException e) {
+            abortCompaction(new Compacted(compacted, Map.of()));
+            throw e;
+        }
+    }
+
+    // Devuelve los registros de la cola, que siguen valiendo despues de los del archivo compactado
+    List<Entry> finishCompaction(Compacted compacted, int from) {
+        UserLog target = compacted.log();
+        List<Entry> tail = new ArrayList<>();
+        for (int offset = from; offset < position; ) {
+            Entry entry = read(offset, buffer.getInt(offset));
+            tail.add(entry);
+            offset += entry.size();
+        }
+        byte[] bytes = new byte[position - from];
+        buffer.get(from, bytes);
+        target.ensureCapacity(bytes.length);
+        target.buffer.put(target.position, bytes);
+        target.position += bytes.length;
+
+        try {
+            target.buffer.force();
+            target.channel.close();
+            buffer.force();
+            channel.close();
+            try {
+                Files.move(target.path, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                // Se sigue con el log original
+                map(path, Files.size(path));
+                Files.deleteIfExists(target.path);
+                throw e;
+            }
+            map(path, Files.size(path));
+            position = target.position;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot compact user log " + path, e);
+        }
+        return tail;
+    }
+
+    void abortCompaction(Compacted compacted) {
+        try {
+            if (compacted.log().channel != null) {
+                compacted.log().channel.close();
+            }
+            Files.deleteIfExists(compacted.log().path);
+        } catch (IOException e) {
+            Log.warnf(e, "Cannot delete %s", compacted.log().path);
+        }
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() {
+        try {
+            buffer.force();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(byte type, User user, String id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            if (type == DELETE) {
+                out.writeUTF(id);
+            } else {
+                writeUser(out, user);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeUTF(user.getId());
+        writeString(out, user.getUsername());
+        writeString(out, user.getEmail());
+        writeString(out, user.getPassword());
+        if (user.getRoles() == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(user.getRoles().size());
+            for (String role : user.getRoles()) {
+                out.writeUTF(role);
+            }
+        }
+        writeInstant(out, user.getLastLogin());
+        writeInstant(out, user.getCreated());
+        writeInstant(out, user.getModified());
+        writeInstant(out, user.getDeletedAt());
+        writeLong(out, user.getExpiresAt());
+        writeLong(out, user.getVersion());
+        // Los atributos nuevos van al final: un registro escrito antes simplemente termina antes
+        writeInstant(out, user.getCredentialsChangedAt());
+    }
+
+    private static User readUser(DataInputStream in) throws IOException {
+        User user = new User();
+        user.setId(in.readUTF());
+        user.setUsername(readString(in));
+        user.setEmail(readString(in));
+        user.setPassword(readString(in));
+        int roles = in.readInt();
+        if (roles >= 0) {
+            Set<String> values = new HashSet<>();
+            for (int i = 0; i < roles; i++) {
+                values.add(in.readUTF());
+            }
+            user.setRoles(values);
+        }
+        user.setLastLogin(readInstant(in));
+        user.setCreated(readInstant(in));
+        user.setModified(readInstant(in));
+        user.setDeletedAt(readInstant(in));
+        user.setExpiresAt(readLong(in));
+        user.setVersion(readLong(in));
+        if (in.available() > 0) {
+            user.setCredentialsChangedAt(readInstant(in));
+        }
+        return user;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // Mismo criterio que InstantAttributeConverter: epoch en milisegundos
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        writeLong(out, value == null ? null : value.toEpochMilli());
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        Long millis = readLong(in);
+        return millis == null ? null : Instant.ofEpochMilli(millis);
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+}
@@ -0,0 +1,17 @@
+package repository;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import model.User;
+
+// Una pagina de usuarios y el cursor para pedir la siguiente, null cuando ya no hay mas
+@Data
+@AllArgsConstructor
+public class UserPage {
+
+    private List<User> items;
+    private String nextCursor;
+
+}
@@ -1,124 +1,106 @@
 package repository;
 
-import io.smallrye.mutiny.Uni;
-import jakarta.enterprise.context.ApplicationScoped;
-import jakarta.inject.Inject;
-import model.User;
-import software.amazon.awssdk.enhanced.dynamodb.*;
-import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
-import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
-import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
-
-import java.util.concurrent.CompletableFuture;
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
-import java.util.ArrayList;
+import java.util.Map;
 
-@ApplicationScoped
-public class UserRepository {
-
-    private final DynamoDbAsyncTable<User> userTable;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import model.User;
 
-    @Inject
-    public UserRepository(DynamoDbEnhancedAsyncClient enhancedClient) {
-        this.userTable = enhancedClient.table("User", TableSchema.fromBean(User.class));
+// Persistencia de users. El backend se elige al compilar con user.repository.backend:
+//  - dynamodb (por defecto): DynamoDbUserRepository
+//  - embedded: EmbeddedUserRepository, un log en disco para despliegues de un solo nodo sin DynamoDB
+// Las dos implementaciones pasan la misma suite de contrato (UserRepositoryContractTest)
+// Las lecturas devuelven null si el user no existe o esta borrado logicamente
+public interface UserRepository {
+
+    String EMAIL_GUARD_PREFIX = "EMAIL#";
+    String USERNAME_GUARD_PREFIX = "USERNAME#";
+    String REFRESH_TOKEN_PREFIX = "REFRESH#";
+    String REFRESH_FAMILY_PREFIX = "REFRESHFAMILY#";
+
+    // Los guardas y los refresh tokens comparten la tabla con los users, ningun id de user puede empezar asi
+    List<String> RESERVED_ID_PREFIXES = List.of(EMAIL_GUARD_PREFIX, USERNAME_GUARD_PREFIX, REFRESH_TOKEN_PREFIX,
+            REFRESH_FAMILY_PREFIX);
+
+    // Identificadores de los items guarda de unicidad de DynamoDbUserRepository
+    static String emailGuardId(String email) {
+        return EMAIL_GUARD_PREFIX + email;
     }
 
-    public Uni<User> save(User user) {
-        return Uni.createFrom()
-                .completionStage(() -> userTable.putItem(user)
-                        .thenApply(ignored -> user));
+    static String usernameGuardId(String username) {
+        return USERNAME_GUARD_PREFIX + username;
     }
 
-    // TAG: INVESTIGAR
-    // Scan para obtener todos los usuarios esto es costoso en tablas grandes, volvemos a trabajar com completablefuture para manejar la asincronia con awssdk
-    public Uni<List<User>> findAll() {
-        ScanEnhancedRequest request = ScanEnhancedRequest.builder().build();
-        
-        return Uni.createFrom().completionStage(() -> {
-            CompletableFuture<List<User>> future = new CompletableFuture<>();
-            List<User> result = new ArrayList<>();
-            
-            userTable.scan(request).subscribe(page -> {
-                result.addAll(page.items());
-            }).whenComplete((v, throwable) -> {
-                if (throwable != null) {
-                    future.completeExceptionally(throwable);
-                } else {
-                    future.complete(result);
-                }
-            });
-            
-            return future;
-        });
+    static boolean isReservedId(String id) {
+        return id != null && RESERVED_ID_PREFIXES.stream().anyMatch(id::startsWith);
     }
 
-    // Esto es asi por que es get por PK Partition Key sin SortKey, si tenia sortkey deberiamos de buildear la llave con la sortkey o esperar ya la llave como param
-    public Uni<User> findById(String userId) {
-        Key key = Key.builder()
-                .partitionValue(userId)
-                .build();
-        return Uni.createFrom()
-                .completionStage(() -> userTable.getItem(r -> r.key(key)));
+    // Un borrado solo por llave de un id reservado borraria un guarda o un refresh token
+    static void checkNotReserved(Collection<String> ids) {
+        for (String id : ids) {
+            if (isReservedId(id)) {
+                throw new IllegalArgumentException("Invalid user id " + id);
+            }
+        }
     }
 
-    // TAG: INVESTIGAR
-    // Esto es asi utilizando un GSI (Global Secondary Index) se predefine
-    public Uni<User> findByEmail(String email) {
-        return Uni.createFrom().completionStage(() -> {
-            CompletableFuture<User> future = new CompletableFuture<>();
-
-            var index = userTable.index("email-index");
-            Key key = Key.builder().partitionValue(email).build();
-
-            index.query(r -> r
-                    .queryConditional(
-                            QueryConditional.keyEqualTo(key))
-                    .limit(1)
-            ).subscribe(page -> {
-                future.complete(page.items().stream().findFirst().orElse(null));
-            }).exceptionally(throwable -> {
-                future.completeExceptionally(throwable);
-                return null;
-            });
-
-            return future;
-        });
-    }
+    // Escritura completa con bloqueo optimista sobre version
+    Uni<User> save(User user);
 
-    // TAG: INVESTIGAR
-    // Esto es asi utilizando un Scan con filtro ya que username no es ni PK ni SK ni index (es mas costoso ya que recorre toda la tabla primero)
-    public Uni<User> findByUsername(String username) {
-        return Uni.createFrom().completionStage(() -> {
-            CompletableFuture<User> future = new CompletableFuture<>();
-            userTable.scan(r -> r
-                    .filterExpression(
-                            Expression.builder()
-                                    .expression("username = :value")
-                                    .putExpressionValue(":value",
-                                            AttributeValue.builder().s(username).build())
-                                    .build()
-                    )
-            ).subscribe(page -> {
-                future.complete(page.items().stream().findFirst().orElse(null));
-            });
-            return future;
-        });
-    }
+    // Solo lastLogin y modified, sin tocar la version
+    Uni<Void> updateLastLogin(String userId, Instant lastLogin);
 
-    public Uni<Void> delete(User user) {
-        return Uni.createFrom()
-                .completionStage(() -> userTable.deleteItem(user)
-                        .thenApply(ignored -> null));
-    }
+    // Alta con version 1, falla con IllegalArgumentException si el id, el email o el username ya existen
+    Uni<User> create(User user);
+
+    Uni<List<User>> findAll();
+
+    // Una pagina de users, nextCursor es opaco y solo sirve para el mismo backend
+    Uni<UserPage> findPage(int limit, String cursor);
+
+    Multi<User> scanAll();
 
-    public Uni<Boolean> existsById(String userId) {
+    Multi<User> scanAll(int segments);
+
+    // Solo los que existen, por id
+    Uni<Map<String, User>> findAllByIds(Collection<String> ids);
+
+    // Alta masiva con las mismas reglas de unicidad que create, cada user se crea o no por separado
+    // Devuelve un resultado por user en el mismo orden: null si se creo o el motivo por el que no. Los emails y usernames
+    // de la lista tienen que ser distintos entre si
+    Uni<List<String>> createAll(List<User> users);
+
+    // false si no existia, ya estaba borrado o la version no coincide
+    Uni<Boolean> deleteById(String userId, Long expectedVersion);
+
+    // null si no existe, VersionConflictException si expectedVersion no coincide
+    Uni<User> update(String userId, UserUpdate update);
+
+    // Borrado duro solo por llave, IllegalArgumentException si algun id es reservado (ver checkNotReserved). En DynamoDB
+    // los guardas de email y username quedan huerfanos, el siguiente create con ese email o username los libera
+    Uni<Void> deleteAllByIds(Collection<String> ids);
+
+    // Marca deletedAt y el vencimiento expiresAt, devuelve los ids que no existian o ya estaban borrados
+    Uni<List<String>> softDeleteAllByIds(Collection<String> ids, Instant deletedAt, Instant expiresAt, int concurrency);
+
+    Uni<User> findById(String userId);
+
+    Uni<User> findByEmail(String email);
+
+    Uni<User> findByUsername(String username);
+
+    Uni<Void> delete(User user);
+
+    default Uni<Boolean> existsById(String userId) {
         return findById(userId)
                 .map(user -> user != null);
     }
 
-    public Uni<Boolean> existsByEmail(String email) {
+    default Uni<Boolean> existsByEmail(String email) {
         return findByEmail(email)
                 .map(user -> user != null);
     }
-
 }
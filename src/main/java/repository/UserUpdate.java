@@ -0,0 +1,59 @@
+package repository;
+
+import java.time.Instant;
+import java.util.Set;
+
+import lombok.Builder;
+import lombok.Getter;
+import model.User;
+
+// Cambios parciales de un user para UserRepository.update, solo se escriben los atributos que no son null
+// expectedVersion activa el bloqueo optimista: si la version guardada no coincide la escritura falla con
+// VersionConflictException
+@Getter
+@Builder
+public class UserUpdate {
+
+    private final String username;
+    private final String email;
+    // Ya hasheada
+    private final String password;
+    private final Set<String> roles;
+    private final Instant lastLogin;
+    private final Instant modified;
+    private final Instant credentialsChangedAt;
+
+    private final Long expectedVersion;
+
+    boolean changesUniqueAttributes() {
+        return email != null || username != null;
+    }
+
+    // Copia de current con los cambios aplicados y la version incrementada, lo que queda guardado despues del update
+    User applyTo(User current) {
+        User updated = current.toBuilder().build();
+        if (username != null) {
+            updated.setUsername(username);
+        }
+        if (email != null) {
+            updated.setEmail(email);
+        }
+        if (password != null) {
+            updated.setPassword(password);
+        }
+        if (roles != null) {
+            updated.setRoles(roles);
+        }
+        if (lastLogin != null) {
+            updated.setLastLogin(lastLogin);
+        }
+        if (modified != null) {
+            updated.setModified(modified);
+        }
+        if (credentialsChangedAt != null) {
+            updated.setCredentialsChangedAt(credentialsChangedAt);
+        }
+        updated.setVersion(current.getVersion() == null ? 1L : current.getVersion() + 1);
+        return updated;
+    }
+}
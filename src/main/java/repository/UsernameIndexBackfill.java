@@ -0,0 +1,126 @@
+package repository;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.arc.properties.IfBuildProperty;
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.StartupEvent;
+import io.smallrye.mutiny.Uni;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.AttributeDefinition;
+import software.amazon.awssdk.services.dynamodb.model.CreateGlobalSecondaryIndexAction;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexDescription;
+import software.amazon.awssdk.services.dynamodb.model.GlobalSecondaryIndexUpdate;
+import software.amazon.awssdk.services.dynamodb.model.KeySchemaElement;
+import software.amazon.awssdk.services.dynamodb.model.KeyType;
+import software.amazon.awssdk.services.dynamodb.model.Projection;
+import software.amazon.awssdk.services.dynamodb.model.ProjectionType;
+import software.amazon.awssdk.services.dynamodb.model.ScalarAttributeType;
+
+// Job de una sola vez para tablas creadas antes del username-index: crea el GSI si no existe, espera a que DynamoDB
+// termine de indexar las filas existentes y cuenta las que no tienen username (esas nunca van a aparecer en el indice)
+// Se activa con user.username-index.backfill.enabled=true y es idempotente, si el indice ya esta activo no hace nada
+@ApplicationScoped
+@IfBuildProperty(name = "user.repository.backend", stringValue = "dynamodb", enableIfMissing = true)
+public class UsernameIndexBackfill {
+
+    private static final Duration POLL_INTERVAL = Duration.ofSeconds(5);
+
+    @Inject
+    DynamoDbAsyncClient dynamoDbClient;
+
+    @Inject
+    DynamoDbUserRepository userRepository;
+
+    @ConfigProperty(name = "user.username-index.backfill.enabled", defaultValue = "false")
+    boolean enabled;
+
+    void onStart(@Observes StartupEvent event) {
+        if (!enabled) {
+            return;
+        }
+        run().subscribe().with(
+            missing -> Log.infof("username-index backfill finished, %d users without username", missing),
+            failure -> Log.error("username-index backfill failed", failure));
+    }
+
+    public Uni<Long> run() {
+        return indexStatus()
+            .onItem().transformToUni(status -> {
+                if (status == null) {
+                    Log.info("username-index not found, creating it");
+                    return createIndex().chain(this::awaitActive);
+                }
+                return awaitActive();
+            })
+            .chain(this::countUsersWithoutUsername);
+    }
+
+    private Uni<String> indexStatus() {
+        return Uni.createFrom()
+            .completionStage(() -> dynamoDbClient.describeTable(r -> r.tableName(DynamoDbUserRepository.TABLE_NAME)))
+            .map(response -> {
+                List<GlobalSecondaryIndexDescription> indexes = response.table().globalSecondaryIndexes();
+                return indexes.stream()
+                    .filter(index -> DynamoDbUserRepository.USERNAME_INDEX.equals(index.indexName()))
+                    .map(GlobalSecondaryIndexDescription::indexStatusAsString)
+                    .findFirst()
+                    .orElse(null);
+            });
+    }
+
+    // La tabla es PAY_PER_REQUEST por eso no mandamos provisionedThroughput
+    private Uni<Void> createIndex() {
+        return Uni.createFrom()
+            .completionStage(() -> dynamoDbClient.updateTable(r -> r
+                .tableName(DynamoDbUserRepository.TABLE_NAME)
+                .attributeDefinitions(AttributeDefinition.builder()
+                    .attributeName("username")
+                    .attributeType(ScalarAttributeType.S)
+                    .build())
+                .globalSecondaryIndexUpdates(GlobalSecondaryIndexUpdate.builder()
+                    .create(CreateGlobalSecondaryIndexAction.builder()
+                        .indexName(DynamoDbUserRepository.USERNAME_INDEX)
+                        .keySchema(KeySchemaElement.builder()
+                            .attributeName("username")
+                            .keyType(KeyType.HASH)
+                            .build())
+                        .projection(Projection.builder().projectionType(ProjectionType.ALL).build())
+                        .build())
+                    .build())))
+            .replaceWithVoid();
+    }
+
+    // DynamoDB indexa las filas existentes por su cuenta, solo esperamos a que el indice pase a ACTIVE
+    private Uni<Void> awaitActive() {
+        return indexStatus()
+            .onItem().transformToUni(status -> {
+                if ("ACTIVE".equals(status)) {
+                    return Uni.createFrom().voidItem();
+                }
+                Log.infof("username-index is %s, waiting", status);
+                return Uni.createFrom().voidItem()
+                    .onItem().delayIt().by(POLL_INTERVAL)
+                    .chain(this::awaitActive);
+            });
+    }
+
+    private Uni<Long> countUsersWithoutUsername() {
+        AtomicLong missing = new AtomicLong();
+        return userRepository.scanAll()
+            .filter(user -> user.getUsername() == null || user.getUsername().isBlank())
+            .onItem().invoke(user -> {
+                missing.incrementAndGet();
+                Log.warnf("User %s has no username and will not be indexed", user.getId());
+            })
+            .collect().last()
+            .map(ignored -> missing.get());
+    }
+}
@@ -0,0 +1,9 @@
+package repository;
+
+// El user fue modificado por otro request desde que se leyo (la version no coincide)
+public class VersionConflictException extends RuntimeException {
+
+    public VersionConflictException(String userId) {
+        super("User with id " + userId + " was modified concurrently, reload it and retry");
+    }
+}
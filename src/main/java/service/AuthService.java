@@ -1,20 +1,38 @@
 package service;
 
-import java.security.PrivateKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import auth.SecretsManagerJwtKeyProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import auth.SecretsManagerJwtKeyProvider.SigningKey;
 import io.smallrye.jwt.build.Jwt;
 import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 import jakarta.ws.rs.WebApplicationException;
 import dto.LoginResponseDTO;
 import model.User;
+import repository.OperationTimer;
+import repository.RefreshToken;
+import repository.RefreshTokenRepository;
 import repository.UserRepository;
+import repository.UserUpdate;
+import repository.VersionConflictException;
 
 @ApplicationScoped
 public class AuthService {
@@ -23,32 +41,163 @@ public class AuthService {
     UserRepository userRepository;
 
     @Inject
-    BCryptPasswordEncoder passwordEncoder;
+    PasswordHasher passwordHasher;
+
+    @Inject
+    LastLoginRecorder lastLoginRecorder;
 
     @Inject
     SecretsManagerJwtKeyProvider keyProvider;
 
+    @Inject
+    RefreshTokenRepository refreshTokenRepository;
+
+    @ConfigProperty(name = "auth.refresh-token.lifespan", defaultValue = "P14D")
+    Duration refreshTokenLifespan;
+
+    @Inject
+    MeterRegistry registry;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private OperationTimer timer;
+    // Solo la firma, por algoritmo: es lo que cambia entre RS256, ES256 y EdDSA
+    private final Map<String, Timer> signTimers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    void init() {
+        timer = new OperationTimer("service.time", registry);
+    }
+
+    @WithSpan
     public Uni<LoginResponseDTO> login(String email, String password) {
-        return userRepository.findByEmail(email)
+        return timer.time("login", userRepository.findByEmail(email)
             .onItem().transformToUni(user -> {
-                if (user == null || !passwordEncoder.matches(password, user.getPassword())) {
+                if (user == null) {
                     return Uni.createFrom().failure(new WebApplicationException("Invalid credentials", 401));
                 }
 
-                Instant now = Instant.now();
-                user.setLastLogin(now);
-                user.setModified(now);
+                // bcrypt fuera del event loop, ver PasswordHasher
+                return passwordHasher.matches(password, user.getPassword())
+                    .onItem().transformToUni(matches -> {
+                        if (!matches) {
+                            return Uni.createFrom().failure(new WebApplicationException("Invalid credentials", 401));
+                        }
+
+                        Instant now = Instant.now();
+
+                        // Si el hash quedo con otro algoritmo o parametros lo regeneramos ahora que tenemos la password en
+                        // claro, con un UpdateItem parcial del hash junto con el lastLogin. El user puede venir de UserCache
+                        // (local a cada nodo): con expectedVersion no se pisa una password cambiada mientras tanto, en ese
+                        // caso se saltea el rehash y el login sigue normal
+                        if (passwordHasher.needsRehash(user.getPassword())) {
+                            return passwordHasher.encode(password)
+                                .onItem().transformToUni(hash -> userRepository.update(user.getId(), UserUpdate.builder()
+                                    .password(hash)
+                                    .lastLogin(now)
+                                    .modified(now)
+                                    .expectedVersion(user.getVersion())
+                                    .build()))
+                                .onFailure(VersionConflictException.class).recoverWithNull()
+                                .chain(() -> issueRefreshToken(user.getId(), UUID.randomUUID().toString(), now))
+                                .map(refreshToken -> buildToken(user, now, refreshToken));
+                        }
+
+                        // Caso normal: lastLogin segun la politica configurada, ver LastLoginRecorder
+                        return lastLoginRecorder.record(user, now)
+                            .chain(() -> issueRefreshToken(user.getId(), UUID.randomUUID().toString(), now))
+                            .map(refreshToken -> buildToken(user, now, refreshToken));
+                    });
+            }));
+    }
+
+    // Renueva el access token con un refresh token, sin password ni bcrypt: lectura del token, el user (normalmente
+    // desde UserCache) y transaccion de rotacion. Cada refresh token sirve una sola vez, si llega uno ya usado es que se
+    // filtro y se revoca toda la familia (el atacante y el cliente legitimo tienen que volver a loguearse). Un token
+    // emitido antes del ultimo cambio de password tampoco sirve, se revoca su familia
+    @WithSpan
+    public Uni<LoginResponseDTO> refresh(String refreshToken) {
+        Instant now = Instant.now();
+        return timer.time("refresh", refreshTokenRepository.findByHash(hash(refreshToken))
+            .onItem().transformToUni(current -> {
+                if (current == null || current.isExpired(now)) {
+                    return Uni.createFrom().failure(new WebApplicationException("Invalid refresh token", 401));
+                }
+                if (current.isUsed()) {
+                    return refreshTokenRepository.revokeFamily(current.familyId(), now)
+                        .chain(() -> Uni.createFrom().failure(new WebApplicationException("Invalid refresh token", 401)));
+                }
+
+                return userRepository.findById(current.userId())
+                    .onItem().transformToUni(user -> {
+                        if (user == null) {
+                            return Uni.createFrom().failure(new WebApplicationException("Invalid refresh token", 401));
+                        }
+                        if (issuedBeforeCredentialsChange(current, user)) {
+                            return refreshTokenRepository.revokeFamily(current.familyId(), now)
+                                .chain(() -> Uni.createFrom().failure(new WebApplicationException("Invalid refresh token", 401)));
+                        }
+
+                        String nextToken = newRefreshToken();
+                        RefreshToken next = new RefreshToken(hash(nextToken), current.userId(), current.familyId(), now,
+                            now.plus(refreshTokenLifespan), null);
+                        return refreshTokenRepository.rotate(current, next, now)
+                            .onItem().transformToUni(rotated -> rotated
+                                ? Uni.createFrom().item(buildToken(user, now, nextToken))
+                                : Uni.createFrom().failure(new WebApplicationException("Invalid refresh token", 401)));
+                    });
+            }));
+    }
+
+    // Cada rotacion emite con issuedAt nuevo, pero para rotar hay que presentar el token anterior: si ese ya es viejo
+    // se corta la cadena entera
+    private static boolean issuedBeforeCredentialsChange(RefreshToken token, User user) {
+        return user.getCredentialsChangedAt() != null && !token.issuedAt().isAfter(user.getCredentialsChangedAt());
+    }
+
+    // Logout: revoca la familia del refresh token. Un token desconocido no es error, el resultado es el mismo
+    @WithSpan
+    public Uni<Void> revoke(String refreshToken) {
+        return timer.time("revoke", refreshTokenRepository.findByHash(hash(refreshToken))
+            .onItem().transformToUni(token -> token == null
+                ? Uni.createFrom().voidItem()
+                : refreshTokenRepository.revokeFamily(token.familyId(), Instant.now())));
+    }
+
+    private Uni<String> issueRefreshToken(String userId, String familyId, Instant now) {
+        String token = newRefreshToken();
+        RefreshToken refreshToken = new RefreshToken(hash(token), userId, familyId, now, now.plus(refreshTokenLifespan), null);
+        return refreshTokenRepository.createFamily(refreshToken)
+            .replaceWith(token);
+    }
+
+    // 256 bits aleatorios, el token es opaco y solo se guarda su hash
+    private static String newRefreshToken() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
 
-                return userRepository.save(user)
-                    .replaceWith(() -> buildToken(user, now));
-            });
+    private static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private LoginResponseDTO buildToken(User user, Instant now) {
+    private LoginResponseDTO buildToken(User user, Instant now, String refreshToken) {
         long expiresIn = 900; // esta en segundos
-        PrivateKey privateKey = keyProvider.getPrivateKey();
+        // Las llaves ya estan en memoria, se cargan al arrancar y se refrescan en segundo plano
+        SigningKey signingKey = keyProvider.getSigningKey();
 
-        String token = Jwt.claims()
+        Timer signTimer = signTimers.computeIfAbsent(signingKey.algorithm().getAlgorithm(),
+            algorithm -> Timer.builder("jwt.sign.time")
+                .tag("algorithm", algorithm)
+                .publishPercentileHistogram()
+                .register(registry));
+        String token = signTimer.record(() -> Jwt.claims()
             .issuer("user-storer")
             .subject(user.getId())
             .upn(user.getEmail())
@@ -56,8 +205,11 @@ public class AuthService {
             .claim("username", user.getUsername())
             .issuedAt(now.getEpochSecond())
             .expiresAt(now.plusSeconds(expiresIn).getEpochSecond())
-            .sign(privateKey);
+            .jws()
+            .algorithm(signingKey.algorithm())
+            .keyId(signingKey.kid())
+            .sign(signingKey.privateKey()));
 
-        return new LoginResponseDTO(token, "Bearer", expiresIn);
+        return new LoginResponseDTO(token, "Bearer", expiresIn, refreshToken, refreshTokenLifespan.toSeconds());
     }
 }
\ No newline at end of file
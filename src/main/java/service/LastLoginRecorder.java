@@ -0,0 +1,118 @@
+package service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import io.quarkus.logging.Log;
+import io.quarkus.runtime.Startup;
+import io.quarkus.scheduler.Scheduled;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import model.User;
+import repository.UserRepository;
+
+// Antes cada login hacia un putItem del user entero (hash y roles incluidos) solo para actualizar lastLogin y modified,
+// duplicando las escrituras del endpoint mas usado. Ahora se escribe con un UpdateItem parcial y segun auth.last-login.mode:
+//  - update: se espera la escritura antes de devolver el token
+//  - async: se lanza la escritura sin esperarla
+//  - write-behind: se acumula en memoria (un valor por user, el ultimo gana) y se escribe cada flush-interval
+// Con min-interval > 0 no se escribe si el lastLogin guardado es mas reciente que ese intervalo
+@ApplicationScoped
+@Startup
+public class LastLoginRecorder {
+
+    enum Mode { UPDATE, ASYNC, WRITE_BEHIND }
+
+    @Inject
+    UserRepository userRepository;
+
+    @ConfigProperty(name = "auth.last-login.mode", defaultValue = "write-behind")
+    String mode;
+
+    @ConfigProperty(name = "auth.last-login.min-interval", defaultValue = "PT1M")
+    Duration minInterval;
+
+    @ConfigProperty(name = "auth.last-login.flush-concurrency", defaultValue = "8")
+    int flushConcurrency;
+
+    private final Map<String, Instant> pending = new ConcurrentHashMap<>();
+
+    private Mode recordMode;
+
+    // Se parsea una sola vez y un valor mal escrito falla el arranque, no el primer login
+    @PostConstruct
+    void init() {
+        try {
+            recordMode = Mode.valueOf(mode.trim().toUpperCase().replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid auth.last-login.mode " + mode + ", expected update, async or write-behind");
+        }
+    }
+
+    public Uni<Void> record(User user, Instant now) {
+        if (isRecent(user.getLastLogin(), now)) {
+            return Uni.createFrom().voidItem();
+        }
+
+        switch (recordMode) {
+            case UPDATE:
+                return userRepository.updateLastLogin(user.getId(), now);
+            case ASYNC:
+                userRepository.updateLastLogin(user.getId(), now)
+                    .subscribe().with(
+                        ignored -> {},
+                        failure -> Log.warnf(failure, "Could not update lastLogin for user %s", user.getId()));
+                return Uni.createFrom().voidItem();
+            default:
+                pending.merge(user.getId(), now, (current, candidate) -> candidate.isAfter(current) ? candidate : current);
+                return Uni.createFrom().voidItem();
+        }
+    }
+
+    private boolean isRecent(Instant lastLogin, Instant now) {
+        return lastLogin != null
+            && !minInterval.isZero()
+            && lastLogin.plus(minInterval).isAfter(now);
+    }
+
+    @Scheduled(every = "${auth.last-login.flush-interval:5s}", concurrentExecution = Scheduled.ConcurrentExecution.SKIP)
+    Uni<Void> flush() {
+        if (pending.isEmpty()) {
+            return Uni.createFrom().voidItem();
+        }
+
+        // Sacamos cada entrada del mapa antes de escribirla, si llega otro login mientras tanto queda para el proximo flush
+        List<Map.Entry<String, Instant>> batch = new ArrayList<>();
+        for (String userId : List.copyOf(pending.keySet())) {
+            Instant lastLogin = pending.remove(userId);
+            if (lastLogin != null) {
+                batch.add(Map.entry(userId, lastLogin));
+            }
+        }
+
+        return Multi.createFrom().iterable(batch)
+            .onItem().transformToUni(entry -> userRepository.updateLastLogin(entry.getKey(), entry.getValue())
+                .onFailure().recoverWithItem(failure -> {
+                    Log.warnf(failure, "Could not update lastLogin for user %s", entry.getKey());
+                    return null;
+                }))
+            .merge(flushConcurrency)
+            .collect().last()
+            .replaceWithVoid();
+    }
+
+    @PreDestroy
+    void flushOnShutdown() {
+        flush().await().atMost(Duration.ofSeconds(10));
+    }
+}
@@ -0,0 +1,116 @@
+package service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.smallrye.mutiny.Uni;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.ws.rs.WebApplicationException;
+
+// El encoder lo arma PasswordEncoderProducer (bcrypt o argon2 segun config)
+// BCrypt con costo 12 son ~250ms de CPU por llamada, si se ejecuta en el event loop de Vert.x o en el hilo de Netty del
+// SDK bloquea todos los demas requests. Aca lo sacamos a un pool propio con cola acotada: si la cola se llena
+// respondemos 503 en vez de acumular logins que igual van a hacer timeout
+@ApplicationScoped
+public class PasswordHasher {
+
+    @Inject
+    PasswordEncoder passwordEncoder;
+
+    @Inject
+    MeterRegistry registry;
+
+    // 0 significa un hilo por core
+    @ConfigProperty(name = "password.hashing.threads", defaultValue = "0")
+    int threads;
+
+    @ConfigProperty(name = "password.hashing.queue-size", defaultValue = "64")
+    int queueSize;
+
+    private ThreadPoolExecutor executor;
+    private Timer encodeTimer;
+    private Timer matchesTimer;
+    private Counter rejected;
+
+    @PostConstruct
+    void init() {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        encodeTimer = Timer.builder("password.hashing.time")
+                .tag("operation", "encode")
+                .publishPercentileHistogram()
+                .register(registry);
+        matchesTimer = Timer.builder("password.hashing.time")
+                .tag("operation", "matches")
+                .publishPercentileHistogram()
+                .register(registry);
+        rejected = Counter.builder("password.hashing.rejected")
+                .description("Hash requests shed because the queue was full")
+                .register(registry);
+        Gauge.builder("password.hashing.queue.depth", executor, pool -> pool.getQueue().size())
+                .register(registry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+                .register(registry);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    @WithSpan
+    public Uni<String> encode(String rawPassword) {
+        return submit(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    @WithSpan
+    public Uni<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // Barato, solo parsea el prefijo y los parametros del hash, no hace falta el pool
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> Uni<T> submit(Timer timer, Supplier<T> task) {
+        return Uni.createFrom().emitter(emitter -> {
+            try {
+                executor.execute(() -> {
+                    try {
+                        emitter.complete(timer.record(task));
+                    } catch (Throwable failure) {
+                        emitter.fail(failure);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                emitter.fail(new WebApplicationException("Password hashing capacity exhausted, retry later", 503));
+            }
+        });
+    }
+}
@@ -0,0 +1,202 @@
+package service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.eclipse.microprofile.config.inject.ConfigProperty;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dto.UserCreateRequestDTO;
+import dto.UserImportResultDTO;
+import io.smallrye.mutiny.Multi;
+import io.smallrye.mutiny.Uni;
+import io.smallrye.mutiny.infrastructure.Infrastructure;
+import jakarta.enterprise.context.ApplicationScoped;
+import jakarta.inject.Inject;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import jakarta.ws.rs.WebApplicationException;
+import model.User;
+import repository.UserRepository;
+
+// Import masivo: lee un stream de UserCreateRequestDTO (NDJSON o un array JSON), hashea en paralelo con un tope de
+// concurrencia menor al pool de PasswordHasher para no dejar sin hilos al login y escribe por bloques con
+// UserRepository.createAll, que valida la unicidad de cada fila al escribir. Devuelve un resultado por fila a medida que
+// se escriben los bloques
+@ApplicationScoped
+public class UserImportService {
+
+    // Cada user ocupa hasta 3 items (user + guarda de email + guarda de username), 33 users entran en un
+    // TransactWriteItems de 100
+    static final int USERS_PER_BATCH = 33;
+
+    static final String CREATED = "CREATED";
+    static final String FAILED = "FAILED";
+
+    @Inject
+    UserRepository userRepository;
+
+    @Inject
+    PasswordHasher passwordHasher;
+
+    @Inject
+    Validator validator;
+
+    @Inject
+    ObjectMapper objectMapper;
+
+    // 0 significa la mitad de los cores
+    @ConfigProperty(name = "user.import.hash-concurrency", defaultValue = "0")
+    int hashConcurrency;
+
+    @ConfigProperty(name = "user.import.write-concurrency", defaultValue = "4")
+    int writeConcurrency;
+
+    public Multi<UserImportResultDTO> importUsers(InputStream body) {
+        // Emails y usernames vistos en este mismo import, para descartar duplicados dentro del archivo
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        return Multi.createFrom().iterable(() -> rows(body))
+            // rows() lee del InputStream con llamadas bloqueantes, tambien las que disparan los request() del que escribe
+            // la respuesta desde el event loop
+            .runSubscriptionOn(Infrastructure.getDefaultWorkerPool())
+            .onItem().transformToUni(row -> prepare(row, seen))
+            .merge(hashConcurrency > 0 ? hashConcurrency : Math.max(1, Runtime.getRuntime().availableProcessors() / 2))
+            .group().intoLists().of(USERS_PER_BATCH, Duration.ofMillis(200))
+            .onItem().transformToMulti(this::write)
+            .merge(writeConcurrency);
+    }
+
+    private record Row(long number, UserCreateRequestDTO input, User user, String error) {
+
+        Row failed(String message) {
+            return new Row(number, input, null, message);
+        }
+
+        UserImportResultDTO result(String status, String message) {
+            return new UserImportResultDTO(number, input == null ? null : input.getEmail(),
+                CREATED.equals(status) ? user.getId() : null, status, message);
+        }
+    }
+
+    // Si una fila no se puede parsear se reporta y se corta el import, no se puede saber donde empieza la siguiente
+    private Iterator<Row> rows(InputStream body) {
+        MappingIterator<UserCreateRequestDTO> values;
+        try {
+            values = objectMapper.readerFor(UserCreateRequestDTO.class).readValues(body);
+        } catch (IOException e) {
+            return List.of(new Row(1, null, null, "Invalid body: " + e.getMessage())).iterator();
+        }
+
+        return new Iterator<>() {
+            private long number;
+            private boolean broken;
+
+            @Override
+            public boolean hasNext() {
+                if (broken) {
+                    return false;
+                }
+                try {
+                    return values.hasNextValue();
+                } catch (IOException | RuntimeException e) {
+                    return true;
+                }
+            }
+
+            @Override
+            public Row next() {
+                if (broken) {
+                    throw new NoSuchElementException();
+                }
+                number++;
+                try {
+                    return new Row(number, values.nextValue(), null, null);
+                } catch (IOException | RuntimeException e) {
+                    broken = true;
+                    return new Row(number, null, null, "Invalid row: " + e.getMessage());
+                }
+            }
+        };
+    }
+
+    private Uni<Row> prepare(Row row, Set<String> seen) {
+        if (row.error() != null) {
+            return Uni.createFrom().item(row);
+        }
+
+        Set<ConstraintViolation<UserCreateRequestDTO>> violations = validator.validate(row.input());
+        if (!violations.isEmpty()) {
+            return Uni.createFrom().item(row.failed(violations.stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "))));
+        }
+        if (!seen.add("email:" + row.input().getEmail())) {
+            return Uni.createFrom().item(row.failed("Duplicated email " + row.input().getEmail() + " in import"));
+        }
+        if (!seen.add("username:" + row.input().getUsername())) {
+            return Uni.createFrom().item(row.failed("Duplicated username " + row.input().getUsername() + " in import"));
+        }
+
+        // Si el pool de hashing esta lleno (503) esperamos y reintentamos, el import no compite con el login
+        return passwordHasher.encode(row.input().getPassword())
+            .onFailure(WebApplicationException.class).retry()
+                .withBackOff(Duration.ofMillis(100), Duration.ofSeconds(2)).atMost(20)
+            .map(hash -> {
+                Instant now = Instant.now();
+                User user = new User();
+                user.setId(UUID.randomUUID().toString());
+                user.setUsername(row.input().getUsername());
+                user.setEmail(row.input().getEmail());
+                user.setPassword(hash);
+                user.setCreated(now);
+                user.setModified(now);
+                return new Row(row.number(), row.input(), user, null);
+            })
+            .onFailure().recoverWithItem(failure -> row.failed(failure.getMessage()));
+    }
+
+    private Multi<UserImportResultDTO> write(List<Row> batch) {
+        List<UserImportResultDTO> results = new ArrayList<>();
+        List<Row> candidates = new ArrayList<>();
+        for (Row row : batch) {
+            if (row.error() != null) {
+                results.add(row.result(FAILED, row.error()));
+            } else {
+                candidates.add(row);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return Multi.createFrom().iterable(results);
+        }
+
+        return userRepository.createAll(candidates.stream().map(Row::user).toList())
+            .map(outcomes -> {
+                for (int i = 0; i < candidates.size(); i++) {
+                    Row row = candidates.get(i);
+                    results.add(outcomes.get(i) == null
+                        ? row.result(CREATED, null)
+                        : row.result(FAILED, outcomes.get(i)));
+                }
+                return results;
+            })
+            .onFailure().recoverWithItem(failure -> {
+                candidates.forEach(row -> results.add(row.result(FAILED, failure.getMessage())));
+                return results;
+            })
+            .onItem().transformToMulti(items -> Multi.createFrom().iterable(items));
+    }
+}
@@ -1,80 +1,90 @@
 package service;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.opentelemetry.instrumentation.annotations.WithSpan;
+import io.smallrye.mutiny.Multi;
 import io.smallrye.mutiny.Uni;
 import model.User;
+import repository.OperationTimer;
+import repository.UserPage;
 import repository.UserRepository;
+import repository.UserUpdate;
 
 
 @ApplicationScoped
 public class UserService {
 
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+    static final int MAX_BATCH_GET = 500;
+    static final int MAX_BATCH_DELETE = 1000;
+
 	@Inject
 	UserRepository userRepository;
 
     @Inject
-    BCryptPasswordEncoder passwordEncoder;
+    PasswordHasher passwordHasher;
+
+    @Inject
+    MeterRegistry registry;
+
+    // hard | soft
+    @ConfigProperty(name = "user.delete.mode", defaultValue = "hard")
+    String deleteMode;
+
+    @ConfigProperty(name = "user.delete.soft-retention", defaultValue = "P30D")
+    Duration softDeleteRetention;
 
-    // Forma un poco mas tradicional trabajando con el Boolean dentro del uni diferente a create2
+    @ConfigProperty(name = "user.delete.soft-concurrency", defaultValue = "16")
+    int softDeleteConcurrency;
+
+    // service_time_seconds por operacion incluye el hash y las validaciones, repository_time_seconds solo la llamada a
+    // DynamoDB. Los findBy* que solo delegan quedan medidos en el repositorio
+    private OperationTimer timer;
+
+    @PostConstruct
+    void init() {
+        timer = new OperationTimer("service.time", registry);
+    }
+
+    // Las validaciones de id y email unicos ahora las hace el repositorio dentro de la misma escritura transaccional
+    @WithSpan
     public Uni<User> create(User user) {
         if (user == null) {
             return Uni.createFrom()
                     .failure(new IllegalArgumentException("User cannot be null"));
         }
-        
-        // Si viene con ID, verificar que no exista
-        if (user.getId() != null && !user.getId().isBlank()) {
-            return userRepository.existsById(user.getId())
-                .onItem().transformToUni(exists -> {
-                    if (exists) {
-                        return Uni.createFrom()
-                                .failure(new IllegalArgumentException(
-                                        "User with id " + user.getId() + " already exists"));
-                    }
-                    // Verificar que no exista otro user con el mismo email luego validamos el email unico
-                    return userRepository.existsByEmail(user.getEmail())
-                            .onItem().transformToUni(emailExists -> {
-                                if (emailExists) {
-                                    return Uni.createFrom()
-                                            .failure(new IllegalArgumentException(
-                                                    "User with email " + user.getEmail() + " already exists"));
-                                }
-                                // TAG: FALTA agregar la validacion para el UUID valido
-                                user.setCreated(Instant.now());
-                                user.setModified(Instant.now());
-                                user.setPassword(passwordEncoder.encode(user.getPassword()));
-                                return userRepository.save(user);
-                            });
-                }).onFailure().transform(throwable -> 
-                    new IllegalArgumentException("Error creating user: " + throwable.getMessage(), throwable)
-                );
+
+        // Si no viene con ID generamos uno nuevo con uuid
+        // TAG: FALTA agregar la validacion para el UUID valido
+        if (user.getId() == null || user.getId().isBlank()) {
+            user.setId(UUID.randomUUID().toString());
         }
-        
-        
-        // Si no viene con ID, verificar email unico y generar uno nuevo con uuid para su id
-        return userRepository.existsByEmail(user.getEmail())
-                .onItem().transformToUni(emailExists -> {
-                    if (emailExists) {
-                        return Uni.createFrom()
-                                .failure(new IllegalArgumentException(
-                                        "User with email " + user.getEmail() + " already exists"));
-                    }
-                    user.setId(UUID.randomUUID().toString());
-                    user.setCreated(Instant.now());
-                    user.setModified(Instant.now());
-                    user.setPassword(passwordEncoder.encode(user.getPassword()));
-                    return userRepository.save(user);
-                }).onFailure().transform(throwable -> 
-                    new IllegalArgumentException("Error creating user: " + throwable.getMessage(), throwable)
-                );
+        Instant now = Instant.now();
+        user.setCreated(now);
+        user.setModified(now);
+
+        // El hash corre en el pool de PasswordHasher, si esta saturado falla con 503 y no se envuelve
+        return timer.time("create", passwordHasher.encode(user.getPassword())
+                .onItem().transformToUni(hash -> {
+                    user.setPassword(hash);
+                    return userRepository.create(user)
+                            .onFailure().transform(throwable ->
+                                new IllegalArgumentException("Error creating user: " + throwable.getMessage(), throwable)
+                            );
+                }));
     }
     
     // Forma fluida no es valida en esta version de Mutiny pero usa .ifTrue que es mas limpio
@@ -85,10 +95,46 @@ public class UserService {
                     .onItem().ifFalse().transformToUni(ignored -> userRepository.save(user));
     }*/
 
-    public Uni<List<User>> findAll() {
-        return userRepository.findAll();
+    @WithSpan
+    public Uni<UserPage> findPage(Integer limit, String cursor) {
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : limit;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            return Uni.createFrom()
+                    .failure(new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        return timer.time("findPage", userRepository.findPage(pageSize, cursor));
+    }
+
+    public Multi<User> streamAll() {
+        return userRepository.scanAll();
+    }
+
+    // Devuelve los users en el orden de los ids pedidos (sin repetidos), los que no existen van a missing
+    @WithSpan
+    public Uni<BatchLookup> findAllByIds(List<String> ids) {
+        List<String> distinct = ids.stream().distinct().toList();
+        if (distinct.size() > MAX_BATCH_GET) {
+            return Uni.createFrom()
+                    .failure(new IllegalArgumentException("At most " + MAX_BATCH_GET + " ids per request"));
+        }
+        return timer.time("findAllByIds", userRepository.findAllByIds(distinct)
+                .map(found -> {
+                    List<User> users = new ArrayList<>();
+                    List<String> missing = new ArrayList<>();
+                    for (String id : distinct) {
+                        User user = found.get(id);
+                        if (user != null) {
+                            users.add(user);
+                        } else {
+                            missing.add(id);
+                        }
+                    }
+                    return new BatchLookup(users, missing);
+                }));
     }
 
+    public record BatchLookup(List<User> users, List<String> missing) {}
+
 	public Uni<User> findById(String id) {
 		return userRepository.findById(id);
     }
@@ -101,17 +147,73 @@ public class UserService {
 		return userRepository.findByUsername(username);
 	}
 
-    // Esto es asi por que el delete del repository espera el user entero
+    // Borrado masivo sin leer los users. En modo soft se marca deletedAt y el TTL expiresAt y DynamoDB los borra al vencer
+    // En modo hard no sabemos cuales existian, en soft se devuelven los ids que no existian o ya estaban borrados
+    @WithSpan
+    public Uni<List<String>> deleteAll(List<String> ids) {
+        if (ids.size() > MAX_BATCH_DELETE) {
+            return Uni.createFrom()
+                    .failure(new IllegalArgumentException("At most " + MAX_BATCH_DELETE + " ids per request"));
+        }
+        try {
+            UserRepository.checkNotReserved(ids);
+        } catch (IllegalArgumentException e) {
+            return Uni.createFrom().failure(e);
+        }
+        Uni<List<String>> missing;
+        if (isSoftDelete()) {
+            Instant now = Instant.now();
+            missing = userRepository.softDeleteAllByIds(ids, now, now.plus(softDeleteRetention), softDeleteConcurrency);
+        } else {
+            missing = userRepository.deleteAllByIds(ids).replaceWith(List.of());
+        }
+        return timer.time("deleteAll", missing);
+    }
+
+    boolean isSoftDelete() {
+        return "soft".equalsIgnoreCase(deleteMode);
+    }
+
+    // Cambios parciales: solo se escriben los campos que vienen, con la password hasheada. Con expectedVersion falla con
+    // VersionConflictException si otro request lo modifico antes. Devuelve null si el user no existe
+    @WithSpan
+    public Uni<User> update(String id, User changes, Long expectedVersion) {
+        if (changes.getUsername() == null && changes.getEmail() == null && changes.getPassword() == null) {
+            return Uni.createFrom()
+                    .failure(new IllegalArgumentException("Nothing to update"));
+        }
+
+        Uni<String> password = changes.getPassword() == null
+                ? Uni.createFrom().nullItem()
+                : passwordHasher.encode(changes.getPassword());
+        return timer.time("update", password.onItem().transformToUni(hash -> {
+            Instant now = Instant.now();
+            return userRepository.update(id, UserUpdate.builder()
+                    .username(changes.getUsername())
+                    .email(changes.getEmail())
+                    .password(hash)
+                    .modified(now)
+                    // Invalida los refresh tokens ya emitidos (ver AuthService.refresh)
+                    .credentialsChangedAt(hash == null ? null : now)
+                    .expectedVersion(expectedVersion)
+                    .build());
+        }));
+    }
+
+    // Borrado solo por llave con una condicion, sin leer el user antes
+	@WithSpan
 	public Uni<Void> delete(String id) {
-        
-        return userRepository.findById(id).onItem().transformToUni(user -> {
-            if (user == null) {
-                return Uni.createFrom()
-                                .failure(new IllegalArgumentException(
-                                        "User with id " + id + " does not exist"));
-            }
-            return userRepository.delete(user);
-        });
+        Uni<Boolean> deleted;
+        if (isSoftDelete()) {
+            Instant now = Instant.now();
+            deleted = userRepository.softDeleteAllByIds(List.of(id), now, now.plus(softDeleteRetention), 1)
+                    .map(List::isEmpty);
+        } else {
+            deleted = userRepository.deleteById(id, null);
+        }
+        return timer.time("delete", deleted.onItem().transformToUni(found -> found
+                ? Uni.createFrom().voidItem()
+                : Uni.createFrom().failure(new IllegalArgumentException("User with id " + id + " does not exist"))));
     }
 
 }
@@ -0,0 +1,163 @@
+package auth;
+
+import auth.SecretsManagerJwtKeyProvider.SigningKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
+import io.smallrye.jwt.auth.principal.JWTCallerPrincipal;
+import io.smallrye.jwt.auth.principal.ParseException;
+import io.smallrye.jwt.build.Jwt;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingJwtCallerPrincipalFactoryTest {
+
+    @Mock
+    SecretsManagerJwtKeyProvider keyProvider;
+
+    @InjectMocks
+    CachingJwtCallerPrincipalFactory factory;
+
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        factory.registry = registry;
+        factory.issuer = "user-storer";
+        factory.clockSkew = Duration.ZERO;
+        factory.cacheEnabled = true;
+        factory.cacheMaxSize = 100;
+        factory.init();
+    }
+
+    private static SigningKey rsaKey(String kid) throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair kp = kpg.generateKeyPair();
+        return new SigningKey(kid, SignatureAlgorithm.RS256, kp.getPrivate(), kp.getPublic(), null);
+    }
+
+    private static SigningKey ecKey(String kid) throws Exception {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(256);
+        KeyPair kp = kpg.generateKeyPair();
+        return new SigningKey(kid, SignatureAlgorithm.ES256, kp.getPrivate(), kp.getPublic(), null);
+    }
+
+    private static String sign(SigningKey key, String kid, Instant expiresAt) {
+        Instant now = Instant.now();
+        return Jwt.claims()
+            .issuer("user-storer")
+            .subject("user-1")
+            .issuedAt(now.getEpochSecond())
+            .expiresAt(expiresAt.getEpochSecond())
+            .jws()
+            .algorithm(key.algorithm())
+            .keyId(kid)
+            .sign(key.privateKey());
+    }
+
+    private static String sign(SigningKey key) {
+        return sign(key, key.kid(), Instant.now().plusSeconds(900));
+    }
+
+    private double cacheHits() {
+        return registry.get("cache.gets").tag("result", "hit").functionCounter().count();
+    }
+
+    @Test
+    void testVerifiesWithKeyFromKid() throws Exception {
+        SigningKey current = rsaKey("current");
+        SigningKey previous = rsaKey("previous");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current, previous));
+
+        // Un token firmado con la llave anterior sigue valiendo durante la rotacion
+        JWTCallerPrincipal principal = factory.parse(sign(previous), null);
+
+        assertEquals("user-1", principal.getSubject());
+    }
+
+    @Test
+    void testUnknownKidRejected() throws Exception {
+        SigningKey current = rsaKey("current");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current));
+
+        assertThrows(ParseException.class, () -> factory.parse(sign(current, "other", Instant.now().plusSeconds(900)), null));
+    }
+
+    @Test
+    void testAlgorithmMismatchRejected() throws Exception {
+        SigningKey ec = ecKey("key-1");
+        SigningKey rsa = rsaKey("key-1");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(ec));
+
+        // Mismo kid pero firmado con RS256: la llave registrada es ES256
+        assertThrows(ParseException.class, () -> factory.parse(sign(rsa), null));
+    }
+
+    @Test
+    void testWrongKeyForKidRejected() throws Exception {
+        SigningKey current = rsaKey("current");
+        SigningKey forged = rsaKey("current");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current));
+
+        assertThrows(ParseException.class, () -> factory.parse(sign(forged), null));
+    }
+
+    @Test
+    void testCachedTokenNotReverified() throws Exception {
+        SigningKey current = rsaKey("current");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current));
+        String token = sign(current);
+
+        factory.parse(token, null);
+        JWTCallerPrincipal principal = factory.parse(token, null);
+
+        assertEquals("user-1", principal.getSubject());
+        assertEquals(1.0, cacheHits());
+    }
+
+    @Test
+    void testExpiredTokenRejectedEvenIfCached() throws Exception {
+        SigningKey current = rsaKey("current");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current));
+        // exp tiene resolucion de segundos, se firma para el proximo segundo entero
+        Instant expiresAt = Instant.ofEpochSecond(Instant.now().getEpochSecond() + 2);
+        String token = sign(current, current.kid(), expiresAt);
+
+        factory.parse(token, null);
+        Thread.sleep(Duration.between(Instant.now(), expiresAt).toMillis() + 100);
+
+        assertThrows(ParseException.class, () -> factory.parse(token, null));
+    }
+
+    @Test
+    void testCachedTokenRejectedAfterKeyRotation() throws Exception {
+        SigningKey old = rsaKey("old");
+        SigningKey current = rsaKey("current");
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current, old));
+        String token = sign(old);
+        factory.parse(token, null);
+
+        // La llave vieja sale del juego de verificacion, el token cacheado deja de valer
+        when(keyProvider.getVerificationKeys()).thenReturn(List.of(current));
+
+        assertThrows(ParseException.class, () -> factory.parse(token, null));
+        // Los tokens de la llave nueva siguen pasando
+        assertEquals("user-1", factory.parse(sign(current), null).getSubject());
+    }
+}
@@ -0,0 +1,54 @@
+package controller;
+
+import dto.ErrorResponseDTO;
+import dto.RefreshTokenRequestDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import service.AuthService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AuthControllerTest {
+
+    @Mock
+    AuthService authService;
+
+    @InjectMocks
+    AuthController authController;
+
+    private static RefreshTokenRequestDTO refreshRequest() {
+        RefreshTokenRequestDTO input = new RefreshTokenRequestDTO();
+        input.setRefreshToken("refresh-token");
+        return input;
+    }
+
+    @Test
+    void testRefreshInvalidTokenUnauthorized() {
+        when(authService.refresh("refresh-token"))
+            .thenReturn(Uni.createFrom().failure(new WebApplicationException("Invalid refresh token", 401)));
+
+        Response response = authController.refresh(refreshRequest()).await().indefinitely();
+
+        assertEquals(401, response.getStatus());
+        assertInstanceOf(ErrorResponseDTO.class, response.getEntity());
+    }
+
+    @Test
+    void testRefreshBackendFailureIsNotUnauthorized() {
+        // Un error de DynamoDB no puede hacer que el cliente descarte un refresh token valido
+        when(authService.refresh("refresh-token"))
+            .thenReturn(Uni.createFrom().failure(new IllegalStateException("Throttled")));
+
+        Response response = authController.refresh(refreshRequest()).await().indefinitely();
+
+        assertEquals(503, response.getStatus());
+    }
+}
@@ -0,0 +1,97 @@
+package controller;
+
+import dto.ErrorResponseDTO;
+import dto.UserPageResponseDTO;
+import dto.UserPatchRequestDTO;
+import dto.UserResponseDTO;
+import model.User;
+import org.eclipse.microprofile.jwt.JsonWebToken;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.core.Response;
+import repository.UserPage;
+import service.UserService;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserControllerTest {
+
+    @Mock
+    UserService userService;
+
+    @Mock
+    JsonWebToken jwt;
+
+    @InjectMocks
+    UserController userController;
+
+    private static UserPatchRequestDTO passwordChange() {
+        UserPatchRequestDTO input = new UserPatchRequestDTO();
+        input.setPassword("newpassword");
+        return input;
+    }
+
+    @Test
+    void testUpdateOtherUserForbidden() {
+        when(jwt.getGroups()).thenReturn(Set.of("USER"));
+        when(jwt.getSubject()).thenReturn("user-1");
+
+        Response response = userController.update("user-2", passwordChange()).await().indefinitely();
+
+        assertEquals(403, response.getStatus());
+        assertInstanceOf(ErrorResponseDTO.class, response.getEntity());
+        verifyNoInteractions(userService);
+    }
+
+    @Test
+    void testUpdateOwnUser() {
+        User user = new User();
+        user.setId("user-1");
+        when(jwt.getGroups()).thenReturn(Set.of("USER"));
+        when(jwt.getSubject()).thenReturn("user-1");
+        when(userService.update(eq("user-1"), any(User.class), any())).thenReturn(Uni.createFrom().item(user));
+
+        Response response = userController.update("user-1", passwordChange()).await().indefinitely();
+
+        assertEquals(200, response.getStatus());
+        assertEquals("user-1", ((UserResponseDTO) response.getEntity()).getId());
+    }
+
+    @Test
+    void testAdminUpdatesAnyUser() {
+        when(jwt.getGroups()).thenReturn(Set.of("ADMIN"));
+        when(userService.update(eq("user-2"), any(User.class), any())).thenReturn(Uni.createFrom().nullItem());
+
+        Response response = userController.update("user-2", passwordChange()).await().indefinitely();
+
+        assertEquals(404, response.getStatus());
+        assertInstanceOf(ErrorResponseDTO.class, response.getEntity());
+    }
+
+    @Test
+    void testFindAllIsPagedByDefault() {
+        User user = new User();
+        user.setId("user-1");
+        user.setPassword("{bcrypt}hash");
+        when(userService.findPage(null, null)).thenReturn(Uni.createFrom().item(new UserPage(List.of(user), "next")));
+
+        Response response = userController.findAll(null, null).await().indefinitely();
+
+        // Sin limit ni cursor tambien se pagina y se devuelve el DTO, sin el hash
+        assertEquals(200, response.getStatus());
+        UserPageResponseDTO page = (UserPageResponseDTO) response.getEntity();
+        assertEquals("user-1", page.getItems().get(0).getId());
+        assertEquals("next", page.getNextCursor());
+    }
+}
@@ -0,0 +1,81 @@
+package controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dto.UserImportResultDTO;
+import io.quarkus.test.InjectMock;
+import io.quarkus.test.junit.QuarkusTest;
+import io.quarkus.test.security.TestSecurity;
+import io.smallrye.mutiny.Uni;
+import model.User;
+import org.junit.jupiter.api.Test;
+import repository.UserRepository;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static io.restassured.RestAssured.given;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@QuarkusTest
+class UserImportTest {
+
+    @InjectMock
+    UserRepository userRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Test
+    @TestSecurity(user = "admin", roles = "ADMIN")
+    void testImportNdjsonReportsEachRow() throws Exception {
+        // El repositorio rechaza los emails que empiezan con taken, como si ya existieran
+        when(userRepository.createAll(anyList())).thenAnswer(inv -> {
+            List<User> users = inv.getArgument(0);
+            return Uni.createFrom().item(users.stream()
+                .map(user -> user.getEmail().startsWith("taken")
+                    ? "User with email " + user.getEmail() + " already exists"
+                    : null)
+                .toList());
+        });
+
+        String body = String.join("\n",
+            "{\"username\":\"first\",\"password\":\"secret1\",\"email\":\"first@test.com\"}",
+            "{\"username\":\"second\",\"password\":\"secret2\",\"email\":\"taken@test.com\"}",
+            "{\"username\":\"third\",\"password\":\"secret3\",\"email\":\"not-an-email\"}",
+            "{\"username\":\"fourth\",\"password\":\"secret4\",\"email\":\"first@test.com\"}");
+
+        String response = given()
+            .contentType("application/x-ndjson")
+            .accept("application/x-ndjson")
+            .body(body)
+            .when().post("/users/import")
+            .then().statusCode(200)
+            .extract().asString();
+
+        // Las filas se escriben en paralelo, el orden de las lineas no esta garantizado
+        Map<Long, UserImportResultDTO> results = Arrays.stream(response.split("\n"))
+            .filter(line -> !line.isBlank())
+            .map(line -> {
+                try {
+                    return objectMapper.readValue(line, UserImportResultDTO.class);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            })
+            .collect(Collectors.toMap(UserImportResultDTO::getRow, Function.identity()));
+
+        assertEquals(4, results.size());
+        assertEquals("CREATED", results.get(1L).getStatus());
+        assertNotNull(results.get(1L).getId());
+        assertEquals("FAILED", results.get(2L).getStatus());
+        assertEquals("User with email taken@test.com already exists", results.get(2L).getError());
+        assertEquals("FAILED", results.get(3L).getStatus());
+        assertEquals("Email must be a valid email address", results.get(3L).getError());
+        assertEquals("FAILED", results.get(4L).getStatus());
+        assertEquals("Duplicated email first@test.com in import", results.get(4L).getError());
+    }
+}
@@ -0,0 +1,65 @@
+package model;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.enhanced.dynamodb.TableMetadata;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// UserTableSchema tiene que escribir y leer exactamente los mismos items que el schema por reflection de User
+class UserTableSchemaTest {
+
+    private final TableSchema<User> bean = TableSchema.fromBean(User.class);
+    private final TableSchema<User> schema = UserTableSchema.SCHEMA;
+
+    private static User user() {
+        Instant now = Instant.parse("2026-01-15T10:15:30.123Z");
+        return User.builder()
+            .id("5f0c3a52-8d7e-4f4b-9a55-0d6c1c2f7e11")
+            .username("schema")
+            .email("schema@example.com")
+            .password("{bcrypt}hash")
+            .roles(Set.of("USER", "ADMIN"))
+            .lastLogin(now)
+            .created(now.minusSeconds(86400))
+            .modified(now)
+            .credentialsChangedAt(now)
+            .deletedAt(now)
+            .expiresAt(now.getEpochSecond())
+            .version(3L)
+            .build();
+    }
+
+    @Test
+    void testSameItemAsBeanSchema() {
+        User user = user();
+
+        assertEquals(bean.itemToMap(user, true), schema.itemToMap(user, true));
+        assertEquals(bean.itemToMap(new User(), true), schema.itemToMap(new User(), true));
+        assertEquals(bean.attributeNames().stream().sorted().toList(), schema.attributeNames().stream().sorted().toList());
+    }
+
+    @Test
+    void testReadsBeanItems() {
+        Map<String, AttributeValue> item = bean.itemToMap(user(), true);
+
+        assertEquals(user(), schema.mapToItem(item));
+    }
+
+    @Test
+    void testSameKeysAndIndexes() {
+        TableMetadata expected = bean.tableMetadata();
+        TableMetadata actual = schema.tableMetadata();
+
+        assertEquals(expected.primaryPartitionKey(), actual.primaryPartitionKey());
+        for (String index : new String[] { "email-index", "username-index", "created-index" }) {
+            assertEquals(expected.indexPartitionKey(index), actual.indexPartitionKey(index));
+        }
+        assertEquals(expected.customMetadata(), actual.customMetadata());
+    }
+}
@@ -0,0 +1,20 @@
+package repository;
+
+import io.quarkus.test.junit.QuarkusTest;
+import jakarta.inject.Inject;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+// El contrato contra DynamoDB de verdad (LocalStack en aws.endpoint con la tabla de table-init.json), solo con
+// mvn test -Ddynamodb.contract=true
+@QuarkusTest
+@EnabledIfSystemProperty(named = "dynamodb.contract", matches = "true")
+class DynamoDbUserRepositoryTest extends UserRepositoryContractTest {
+
+    @Inject
+    DynamoDbUserRepository repository;
+
+    @Override
+    protected UserRepository repository() {
+        return repository;
+    }
+}
@@ -0,0 +1,150 @@
+package repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import model.User;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddedUserRepositoryTest extends UserRepositoryContractTest {
+
+    @TempDir
+    Path dir;
+
+    private EmbeddedUserRepository repository;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        repository = open();
+    }
+
+    @AfterEach
+    void tearDown() {
+        repository.close();
+    }
+
+    private EmbeddedUserRepository open() {
+        // Compacta en cuanto la mitad del log es basura, sin tamano minimo
+        registry = new SimpleMeterRegistry();
+        return new EmbeddedUserRepository(dir.resolve("users.log").toString(), 4096, false, 0, 0.5, registry);
+    }
+
+    private EmbeddedUserRepository reopen() {
+        repository.close();
+        repository = open();
+        return repository;
+    }
+
+    @Override
+    protected UserRepository repository() {
+        return repository;
+    }
+
+    @Test
+    void testRecoversAfterReopen() {
+        User kept = repository.create(newUser()).await().indefinitely();
+        User deleted = repository.create(newUser()).await().indefinitely();
+        repository.update(kept.getId(), UserUpdate.builder().username("renamed" + kept.getId().substring(0, 8)).build())
+                .await().indefinitely();
+        repository.deleteById(deleted.getId(), null).await().indefinitely();
+
+        reopen();
+
+        User recovered = repository.findById(kept.getId()).await().indefinitely();
+        assertEquals("renamed" + kept.getId().substring(0, 8), recovered.getUsername());
+        assertEquals(2L, recovered.getVersion());
+        assertEquals(kept.getRoles(), recovered.getRoles());
+        assertEquals(kept.getId(), repository.findByEmail(kept.getEmail()).await().indefinitely().getId());
+        assertNull(repository.findById(deleted.getId()).await().indefinitely());
+        assertNull(repository.findByUsername(kept.getUsername()).await().indefinitely());
+    }
+
+    @Test
+    void testDiscardsCorruptTail() throws IOException {
+        User first = repository.create(newUser()).await().indefinitely();
+        User second = repository.create(newUser()).await().indefinitely();
+        repository.close();
+
+        // Se rompe un byte del ultimo registro, como una escritura que no llego completa al disco
+        corrupt(1);
+
+        repository = open();
+        assertNotNull(repository.findById(first.getId()).await().indefinitely());
+        assertNull(repository.findById(second.getId()).await().indefinitely());
+
+        // Lo que se escribe despues de la recuperacion tiene que sobrevivir a otro reinicio
+        User third = repository.create(newUser()).await().indefinitely();
+        reopen();
+        assertNotNull(repository.findById(third.getId()).await().indefinitely());
+    }
+
+    @Test
+    void testDiscardsValidRecordsAfterCorruptOne() throws IOException {
+        User first = repository.create(newUser()).await().indefinitely();
+        User torn = repository.create(newUser()).await().indefinitely();
+        User stale = repository.create(newUser()).await().indefinitely();
+        repository.close();
+
+        // Con fsync=false el tercer registro pudo llegar al disco y el segundo no
+        corrupt(1);
+
+        repository = open();
+        assertNotNull(repository.findById(first.getId()).await().indefinitely());
+        assertNull(repository.findById(torn.getId()).await().indefinitely());
+        assertNull(repository.findById(stale.getId()).await().indefinitely());
+
+        // El registro nuevo ocupa lo mismo que el cortado y queda justo antes del viejo, que no puede volver
+        User next = repository.create(newUser()).await().indefinitely();
+        reopen();
+        assertNotNull(repository.findById(next.getId()).await().indefinitely());
+        assertNull(repository.findById(stale.getId()).await().indefinitely());
+    }
+
+    // Rompe un byte de los datos del registro numero index (desde 0)
+    private void corrupt(int index) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve("users.log"), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            int offset = UserLog.HEADER_SIZE;
+            for (int i = 0; i < index; i++) {
+                ByteBuffer length = ByteBuffer.allocate(4);
+                channel.read(length, offset);
+                offset += 8 + length.flip().getInt();
+            }
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7f }), offset + 20);
+        }
+    }
+
+    @Test
+    void testCompactsOverwrittenRecords() {
+        User user = repository.create(newUser()).await().indefinitely();
+        for (int i = 0; i < 50; i++) {
+            repository.update(user.getId(), UserUpdate.builder().password("{bcrypt}hash" + i).build())
+                    .await().indefinitely();
+        }
+        User other = repository.create(newUser()).await().indefinitely();
+        repository.deleteAllByIds(List.of(other.getId())).await().indefinitely();
+
+        reopen();
+
+        // Sin compactar serian 52 registros PUT y un DELETE, despues de compactar solo queda el user vivo
+        assertTrue(registry.get("user.embedded.log.bytes").gauge().value() < 1024);
+        User recovered = repository.findById(user.getId()).await().indefinitely();
+        assertEquals("{bcrypt}hash49", recovered.getPassword());
+        assertEquals(51L, recovered.getVersion());
+        assertNull(repository.findById(other.getId()).await().indefinitely());
+        assertFalse(Files.exists(dir.resolve("users.log.compact")));
+    }
+}
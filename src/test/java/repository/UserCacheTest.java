@@ -0,0 +1,96 @@
+package repository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.mutiny.Uni;
+import model.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserCacheTest {
+
+    private UserCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        cache = new UserCache();
+        cache.registry = new SimpleMeterRegistry();
+        cache.enabled = true;
+        cache.maxSize = 100;
+        cache.ttl = Duration.ofMinutes(1);
+        cache.negativeTtl = Duration.ofMinutes(1);
+        cache.init();
+    }
+
+    private static User user(String id, String email) {
+        User user = new User();
+        user.setId(id);
+        user.setEmail(email);
+        return user;
+    }
+
+    private Uni<User> load(User user) {
+        loads.incrementAndGet();
+        return Uni.createFrom().item(user);
+    }
+
+    @Test
+    void testHitByIdServesEmail() {
+        User user = user("id-1", "a@test.com");
+
+        cache.getById("id-1", () -> load(user)).await().indefinitely();
+        User byEmail = cache.getByEmail("a@test.com", () -> load(user)).await().indefinitely();
+
+        assertEquals("id-1", byEmail.getId());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testLoadStartedBeforeInvalidationIsNotCached() {
+        CompletableFuture<User> pending = new CompletableFuture<>();
+        CompletableFuture<User> read = cache.getById("id-1", () -> Uni.createFrom().completionStage(pending))
+            .subscribeAsCompletionStage().toCompletableFuture();
+
+        // La escritura invalida mientras la lectura sigue en curso, lo que devuelve esa lectura ya es viejo
+        cache.invalidateId("id-1");
+        pending.complete(user("id-1", "old@test.com"));
+        assertEquals("old@test.com", read.join().getEmail());
+
+        User fresh = cache.getById("id-1", () -> load(user("id-1", "new@test.com"))).await().indefinitely();
+        assertEquals("new@test.com", fresh.getEmail());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testInvalidationOfOtherKeyKeepsLoad() {
+        CompletableFuture<User> pending = new CompletableFuture<>();
+        CompletableFuture<User> read = cache.getById("id-1", () -> Uni.createFrom().completionStage(pending))
+            .subscribeAsCompletionStage().toCompletableFuture();
+
+        // Antes una escritura de cualquier user descartaba todas las lecturas en curso
+        cache.invalidate(user("id-2", "b@test.com"));
+        pending.complete(user("id-1", "a@test.com"));
+        read.join();
+
+        cache.getById("id-1", () -> load(user("id-1", "a@test.com"))).await().indefinitely();
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void testInvalidateIdDropsEmailEntry() {
+        User user = user("id-1", "a@test.com");
+        cache.getByEmail("a@test.com", () -> load(user)).await().indefinitely();
+
+        // Borrado masivo: solo se conoce el id
+        cache.invalidateId("id-1");
+
+        assertNull(cache.getByEmail("a@test.com", () -> load(null)).await().indefinitely());
+        assertEquals(2, loads.get());
+    }
+}
@@ -0,0 +1,260 @@
+package repository;
+
+import model.User;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Lo que tiene que cumplir cualquier backend de UserRepository, cada implementacion lo extiende con su repository()
+// Los ids, emails y usernames son aleatorios asi se puede correr contra una tabla que ya tiene datos
+abstract class UserRepositoryContractTest {
+
+    protected abstract UserRepository repository();
+
+    protected User newUser() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        User user = new User();
+        user.setId(UUID.randomUUID().toString());
+        user.setUsername("user" + suffix);
+        user.setEmail("user" + suffix + "@test.com");
+        user.setPassword("{bcrypt}hash");
+        user.setRoles(new HashSet<>(Set.of("user")));
+        user.setCreated(now);
+        user.setModified(now);
+        return user;
+    }
+
+    private User create(User user) {
+        return repository().create(user).await().indefinitely();
+    }
+
+    @Test
+    void testCreateAndFind() {
+        User user = create(newUser());
+
+        assertEquals(1L, user.getVersion());
+        User byId = repository().findById(user.getId()).await().indefinitely();
+        assertEquals(user.getEmail(), byId.getEmail());
+        assertEquals(user.getRoles(), byId.getRoles());
+        assertEquals(user.getCreated(), byId.getCreated());
+        assertEquals(user.getId(), repository().findByEmail(user.getEmail()).await().indefinitely().getId());
+        assertEquals(user.getId(), repository().findByUsername(user.getUsername()).await().indefinitely().getId());
+        assertTrue(repository().existsById(user.getId()).await().indefinitely());
+        assertTrue(repository().existsByEmail(user.getEmail()).await().indefinitely());
+    }
+
+    @Test
+    void testFindMissing() {
+        assertNull(repository().findById(UUID.randomUUID().toString()).await().indefinitely());
+        assertNull(repository().findByEmail("missing-" + UUID.randomUUID() + "@test.com").await().indefinitely());
+        assertNull(repository().findByUsername("missing" + UUID.randomUUID()).await().indefinitely());
+    }
+
+    @Test
+    void testFindByIdIgnoresGuards() {
+        User user = create(newUser());
+
+        // Los items guarda viven en la misma tabla con id EMAIL#... y USERNAME#..., no son users
+        String emailGuard = UserRepository.emailGuardId(user.getEmail());
+        assertNull(repository().findById(emailGuard).await().indefinitely());
+        assertFalse(repository().existsById(emailGuard).await().indefinitely());
+        assertNull(repository().findById(UserRepository.usernameGuardId(user.getUsername())).await().indefinitely());
+        assertFalse(repository().findAllByIds(List.of(emailGuard)).await().indefinitely().containsKey(emailGuard));
+    }
+
+    @Test
+    void testCreateDuplicates() {
+        User user = create(newUser());
+
+        User sameId = newUser();
+        sameId.setId(user.getId());
+        User sameEmail = newUser();
+        sameEmail.setEmail(user.getEmail());
+        User sameUsername = newUser();
+        sameUsername.setUsername(user.getUsername());
+
+        assertThrows(IllegalArgumentException.class, () -> create(sameId));
+        assertThrows(IllegalArgumentException.class, () -> create(sameEmail));
+        assertThrows(IllegalArgumentException.class, () -> create(sameUsername));
+    }
+
+    @Test
+    void testUpdate() {
+        User user = create(newUser());
+        String email = "updated-" + user.getEmail();
+
+        User updated = repository().update(user.getId(), UserUpdate.builder()
+                .email(email)
+                .expectedVersion(1L)
+                .build()).await().indefinitely();
+
+        assertEquals(email, updated.getEmail());
+        assertEquals(user.getUsername(), updated.getUsername());
+        assertEquals(2L, updated.getVersion());
+        // El email viejo queda libre
+        assertNull(repository().findByEmail(user.getEmail()).await().indefinitely());
+        assertEquals(user.getId(), repository().findByEmail(email).await().indefinitely().getId());
+        create(newUserWithEmail(user.getEmail()));
+    }
+
+    private User newUserWithEmail(String email) {
+        User user = newUser();
+        user.setEmail(email);
+        return user;
+    }
+
+    @Test
+    void testUpdateVersionConflict() {
+        User user = create(newUser());
+
+        assertThrows(VersionConflictException.class, () -> repository().update(user.getId(), UserUpdate.builder()
+                .password("{bcrypt}other")
+                .expectedVersion(5L)
+                .build()).await().indefinitely());
+    }
+
+    @Test
+    void testUpdateDuplicateEmail() {
+        User first = create(newUser());
+        User second = create(newUser());
+
+        assertThrows(IllegalArgumentException.class, () -> repository().update(second.getId(), UserUpdate.builder()
+                .email(first.getEmail())
+                .build()).await().indefinitely());
+    }
+
+    @Test
+    void testUpdateMissing() {
+        assertNull(repository().update(UUID.randomUUID().toString(), UserUpdate.builder()
+                .password("{bcrypt}other")
+                .build()).await().indefinitely());
+    }
+
+    @Test
+    void testUpdateLastLogin() {
+        User user = create(newUser());
+        Instant lastLogin = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+
+        repository().updateLastLogin(user.getId(), lastLogin).await().indefinitely();
+
+        assertEquals(lastLogin, repository().findById(user.getId()).await().indefinitely().getLastLogin());
+    }
+
+    @Test
+    void testDeleteById() {
+        User user = create(newUser());
+
+        assertFalse(repository().deleteById(user.getId(), 7L).await().indefinitely());
+        assertTrue(repository().deleteById(user.getId(), 1L).await().indefinitely());
+        assertNull(repository().findById(user.getId()).await().indefinitely());
+        assertFalse(repository().deleteById(user.getId(), null).await().indefinitely());
+        // El email y el username se pueden volver a usar
+        User again = newUserWithEmail(user.getEmail());
+        again.setUsername(user.getUsername());
+        create(again);
+    }
+
+    @Test
+    void testDeleteAllByIds() {
+        User user = create(newUser());
+
+        repository().deleteAllByIds(List.of(user.getId(), UUID.randomUUID().toString())).await().indefinitely();
+
+        assertNull(repository().findById(user.getId()).await().indefinitely());
+        // Los guardas que hayan quedado no bloquean el email ni el username
+        User again = newUserWithEmail(user.getEmail());
+        again.setUsername(user.getUsername());
+        create(again);
+    }
+
+    @Test
+    void testDeleteAllByIdsRejectsReservedIds() {
+        User user = create(newUser());
+        String guard = UserRepository.emailGuardId(user.getEmail());
+
+        assertThrows(IllegalArgumentException.class,
+                () -> repository().deleteAllByIds(List.of(user.getId(), guard)).await().indefinitely());
+        // No se borro nada, ni el user ni su guarda
+        assertNotNull(repository().findById(user.getId()).await().indefinitely());
+        assertThrows(IllegalArgumentException.class, () -> create(newUserWithEmail(user.getEmail())));
+    }
+
+    @Test
+    void testSoftDelete() {
+        User user = create(newUser());
+        String missing = UUID.randomUUID().toString();
+        Instant now = Instant.now();
+
+        List<String> notFound = repository().softDeleteAllByIds(List.of(user.getId(), missing), now,
+                now.plus(30, ChronoUnit.DAYS), 4).await().indefinitely();
+
+        assertEquals(List.of(missing), notFound);
+        assertNull(repository().findById(user.getId()).await().indefinitely());
+        assertNull(repository().findByEmail(user.getEmail()).await().indefinitely());
+        assertFalse(repository().findAllByIds(List.of(user.getId())).await().indefinitely().containsKey(user.getId()));
+    }
+
+    @Test
+    void testFindAllByIds() {
+        User first = create(newUser());
+        User second = create(newUser());
+        User free = newUser();
+
+        Map<String, User> found = repository().findAllByIds(List.of(first.getId(), second.getId(), free.getId()))
+                .await().indefinitely();
+        assertEquals(Set.of(first.getId(), second.getId()), found.keySet());
+    }
+
+    @Test
+    void testCreateAllReportsEachUser() {
+        User existing = create(newUser());
+        User emailClash = newUser();
+        emailClash.setEmail(existing.getEmail());
+        User usernameClash = newUser();
+        usernameClash.setUsername(existing.getUsername());
+        User fresh = newUser();
+
+        List<String> outcomes = repository().createAll(List.of(emailClash, fresh, usernameClash)).await().indefinitely();
+
+        assertEquals(3, outcomes.size());
+        assertEquals("User with email " + existing.getEmail() + " already exists", outcomes.get(0));
+        assertNull(outcomes.get(1));
+        assertEquals("User with username " + existing.getUsername() + " already exists", outcomes.get(2));
+        assertEquals(fresh.getId(), repository().findByEmail(fresh.getEmail()).await().indefinitely().getId());
+        assertNull(repository().findById(emailClash.getId()).await().indefinitely());
+        // El guarda del email sigue siendo del user original
+        assertEquals(existing.getId(), repository().findByEmail(existing.getEmail()).await().indefinitely().getId());
+        assertThrows(IllegalArgumentException.class, () -> create(newUserWithEmail(fresh.getEmail())));
+    }
+
+    @Test
+    void testFindPage() {
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            ids.add(create(newUser()).getId());
+        }
+
+        // Se recorren todas las paginas, los users de este test tienen que aparecer una sola vez
+        Set<String> seen = new HashSet<>();
+        String cursor = null;
+        do {
+            UserPage page = repository().findPage(2, cursor).await().indefinitely();
+            assertTrue(page.getItems().size() <= 2);
+            for (User user : page.getItems()) {
+                assertTrue(seen.add(user.getId()));
+            }
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertTrue(seen.containsAll(ids));
+    }
+}
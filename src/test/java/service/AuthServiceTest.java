@@ -2,19 +2,29 @@ package service;
 
 import dto.LoginResponseDTO;
 import model.User;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import repository.RefreshToken;
+import repository.RefreshTokenRepository;
 import repository.UserRepository;
+import repository.VersionConflictException;
 import auth.SecretsManagerJwtKeyProvider;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import auth.SecretsManagerJwtKeyProvider.SigningKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.smallrye.jwt.algorithm.SignatureAlgorithm;
 import io.smallrye.mutiny.Uni;
+import jakarta.ws.rs.WebApplicationException;
 
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -26,14 +36,27 @@ public class AuthServiceTest {
     UserRepository userRepository;
 
     @Mock
-    BCryptPasswordEncoder passwordEncoder;
+    PasswordHasher passwordHasher;
+
+    @Mock
+    LastLoginRecorder lastLoginRecorder;
 
     @Mock
     SecretsManagerJwtKeyProvider keyProvider;
 
+    @Mock
+    RefreshTokenRepository refreshTokenRepository;
+
     @InjectMocks
     AuthService authService;
 
+    @BeforeEach
+    void setUp() {
+        authService.refreshTokenLifespan = Duration.ofDays(14);
+        authService.registry = new SimpleMeterRegistry();
+        authService.init();
+    }
+
     @Test
     public void testLoginSuccess() throws Exception {
         String email = "test@example.com";
@@ -47,15 +70,16 @@ public class AuthServiceTest {
         user.setPassword(encodedPassword);
 
         when(userRepository.findByEmail(email)).thenReturn(Uni.createFrom().item(user));
-        when(passwordEncoder.matches(rawPassword, encodedPassword)).thenReturn(true);
-        when(userRepository.save(any())).thenReturn(Uni.createFrom().item(user));
+        when(passwordHasher.matches(rawPassword, encodedPassword)).thenReturn(Uni.createFrom().item(true));
+        when(lastLoginRecorder.record(eq(user), any())).thenReturn(Uni.createFrom().voidItem());
+        when(refreshTokenRepository.createFamily(any())).thenReturn(Uni.createFrom().voidItem());
 
         // generate a temporary RSA keypair for signing
         KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
         kpg.initialize(2048);
         KeyPair kp = kpg.generateKeyPair();
         PrivateKey privateKey = kp.getPrivate();
-        when(keyProvider.getPrivateKey()).thenReturn(privateKey);
+        when(keyProvider.getSigningKey()).thenReturn(new SigningKey("test-kid", SignatureAlgorithm.RS256, privateKey, kp.getPublic(), null));
 
         LoginResponseDTO dto = authService.login(email, rawPassword).await().indefinitely();
 
@@ -63,11 +87,193 @@ public class AuthServiceTest {
         assertNotNull(dto.getAccessToken());
         assertEquals("Bearer", dto.getTokenType());
         assertTrue(dto.getExpiresIn() > 0);
+        assertNotNull(dto.getRefreshToken());
+        // El header lleva el kid de la llave con la que se firmo
+        String header = new String(Base64.getUrlDecoder().decode(dto.getAccessToken().split("\\.")[0]));
+        assertTrue(header.contains("\"kid\":\"test-kid\""));
 
         verify(userRepository).findByEmail(email);
-        verify(passwordEncoder).matches(rawPassword, encodedPassword);
-        verify(userRepository).save(any());
-        verify(keyProvider).getPrivateKey();
+        verify(passwordHasher).matches(rawPassword, encodedPassword);
+        // El login normal ya no reescribe el user entero
+        verify(lastLoginRecorder).record(eq(user), any());
+        verify(userRepository, never()).save(any());
+        verify(keyProvider).getSigningKey();
+    }
+
+    @Test
+    public void testLoginWrongPasswordFails() {
+        String email = "test@example.com";
+
+        User user = new User();
+        user.setId("id-123");
+        user.setEmail(email);
+        user.setPassword("encoded");
+
+        when(userRepository.findByEmail(email)).thenReturn(Uni.createFrom().item(user));
+        when(passwordHasher.matches("wrong", "encoded")).thenReturn(Uni.createFrom().item(false));
+
+        WebApplicationException exception = assertThrows(
+            WebApplicationException.class,
+            () -> authService.login(email, "wrong").await().indefinitely()
+        );
+
+        assertEquals(401, exception.getResponse().getStatus());
+        verify(userRepository, never()).save(any());
+        verifyNoInteractions(lastLoginRecorder, keyProvider);
+    }
+
+    @Test
+    public void testLoginRehashesOutdatedPassword() throws Exception {
+        String email = "test@example.com";
+
+        User user = new User();
+        user.setId("id-123");
+        user.setEmail(email);
+        user.setPassword("old-hash");
+
+        when(userRepository.findByEmail(email)).thenReturn(Uni.createFrom().item(user));
+        when(passwordHasher.matches("plain", "old-hash")).thenReturn(Uni.createFrom().item(true));
+        when(passwordHasher.needsRehash("old-hash")).thenReturn(true);
+        when(passwordHasher.encode("plain")).thenReturn(Uni.createFrom().item("new-hash"));
+        when(userRepository.update(eq("id-123"), any())).thenReturn(Uni.createFrom().item(user));
+        when(refreshTokenRepository.createFamily(any())).thenReturn(Uni.createFrom().voidItem());
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair kp = kpg.generateKeyPair();
+        when(keyProvider.getSigningKey()).thenReturn(new SigningKey("test-kid", SignatureAlgorithm.RS256, kp.getPrivate(), kp.getPublic(), null));
+
+        authService.login(email, "plain").await().indefinitely();
+
+        // Se guarda el hash nuevo con un update parcial, sin reescribir el user entero
+        verify(userRepository).update(eq("id-123"), argThat(update -> "new-hash".equals(update.getPassword())));
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    public void testLoginSkipsRehashOnVersionConflict() throws Exception {
+        String email = "test@example.com";
+
+        User user = new User();
+        user.setId("id-123");
+        user.setEmail(email);
+        user.setPassword("old-hash");
+        user.setVersion(3L);
+
+        when(userRepository.findByEmail(email)).thenReturn(Uni.createFrom().item(user));
+        when(passwordHasher.matches("plain", "old-hash")).thenReturn(Uni.createFrom().item(true));
+        when(passwordHasher.needsRehash("old-hash")).thenReturn(true);
+        when(passwordHasher.encode("plain")).thenReturn(Uni.createFrom().item("new-hash"));
+        // Otro request cambio la password despues de que el user quedara en la cache
+        when(userRepository.update(eq("id-123"), any()))
+            .thenReturn(Uni.createFrom().failure(new VersionConflictException("id-123")));
+        when(refreshTokenRepository.createFamily(any())).thenReturn(Uni.createFrom().voidItem());
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair kp = kpg.generateKeyPair();
+        when(keyProvider.getSigningKey()).thenReturn(new SigningKey("test-kid", SignatureAlgorithm.RS256, kp.getPrivate(), kp.getPublic(), null));
+
+        LoginResponseDTO dto = authService.login(email, "plain").await().indefinitely();
+
+        // El rehash es condicional a la version leida y si falla el login sigue sin reintentar la escritura
+        assertNotNull(dto.getAccessToken());
+        verify(userRepository).update(eq("id-123"), argThat(update -> Long.valueOf(3L).equals(update.getExpectedVersion())));
+        verify(userRepository, never()).save(any());
+    }
+
+    @Test
+    public void testLoginSignsWithEcKey() throws Exception {
+        String email = "test@example.com";
+
+        User user = new User();
+        user.setId("id-123");
+        user.setEmail(email);
+        user.setPassword("encoded");
+
+        when(userRepository.findByEmail(email)).thenReturn(Uni.createFrom().item(user));
+        when(passwordHasher.matches("plain", "encoded")).thenReturn(Uni.createFrom().item(true));
+        when(lastLoginRecorder.record(eq(user), any())).thenReturn(Uni.createFrom().voidItem());
+        when(refreshTokenRepository.createFamily(any())).thenReturn(Uni.createFrom().voidItem());
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(256);
+        KeyPair kp = kpg.generateKeyPair();
+        when(keyProvider.getSigningKey()).thenReturn(new SigningKey("ec-kid", SignatureAlgorithm.ES256, kp.getPrivate(), kp.getPublic(), null));
+
+        LoginResponseDTO dto = authService.login(email, "plain").await().indefinitely();
+
+        // El alg del header sale de la llave, no queda fijo en RS256
+        String header = new String(Base64.getUrlDecoder().decode(dto.getAccessToken().split("\\.")[0]));
+        assertTrue(header.contains("\"alg\":\"ES256\""));
+        assertTrue(header.contains("\"kid\":\"ec-kid\""));
+    }
+
+    @Test
+    public void testRefreshRotatesTokenWithoutHashing() throws Exception {
+        User user = new User();
+        user.setId("id-123");
+        user.setEmail("test@example.com");
+
+        Instant now = Instant.now();
+        RefreshToken current = new RefreshToken("hash", "id-123", "family-1", now, now.plusSeconds(60), null);
+        when(refreshTokenRepository.findByHash(any())).thenReturn(Uni.createFrom().item(current));
+        when(refreshTokenRepository.rotate(eq(current), any(), any())).thenReturn(Uni.createFrom().item(true));
+        when(userRepository.findById("id-123")).thenReturn(Uni.createFrom().item(user));
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        KeyPair kp = kpg.generateKeyPair();
+        when(keyProvider.getSigningKey()).thenReturn(new SigningKey("test-kid", SignatureAlgorithm.RS256, kp.getPrivate(), kp.getPublic(), null));
+
+        LoginResponseDTO dto = authService.refresh("old-refresh-token").await().indefinitely();
+
+        assertNotNull(dto.getAccessToken());
+        assertNotEquals("old-refresh-token", dto.getRefreshToken());
+        // El siguiente token queda en la misma familia
+        verify(refreshTokenRepository).rotate(eq(current), argThat(next -> "family-1".equals(next.familyId())), any());
+        verifyNoInteractions(passwordHasher);
+    }
+
+    @Test
+    public void testRefreshWithReusedTokenRevokesFamily() {
+        Instant now = Instant.now();
+        RefreshToken used = new RefreshToken("hash", "id-123", "family-1", now, now.plusSeconds(60), now);
+        when(refreshTokenRepository.findByHash(any())).thenReturn(Uni.createFrom().item(used));
+        when(refreshTokenRepository.revokeFamily(eq("family-1"), any())).thenReturn(Uni.createFrom().voidItem());
+
+        WebApplicationException exception = assertThrows(
+            WebApplicationException.class,
+            () -> authService.refresh("reused-token").await().indefinitely()
+        );
+
+        assertEquals(401, exception.getResponse().getStatus());
+        verify(refreshTokenRepository).revokeFamily(eq("family-1"), any());
+        verify(refreshTokenRepository, never()).rotate(any(), any(), any());
+    }
+
+    @Test
+    public void testRefreshIssuedBeforePasswordChangeFails() {
+        Instant now = Instant.now();
+        User user = new User();
+        user.setId("id-123");
+        user.setCredentialsChangedAt(now.minusSeconds(10));
+
+        RefreshToken current = new RefreshToken("hash", "id-123", "family-1", now.minusSeconds(60), now.plusSeconds(60), null);
+        when(refreshTokenRepository.findByHash(any())).thenReturn(Uni.createFrom().item(current));
+        when(userRepository.findById("id-123")).thenReturn(Uni.createFrom().item(user));
+        when(refreshTokenRepository.revokeFamily(eq("family-1"), any())).thenReturn(Uni.createFrom().voidItem());
+
+        WebApplicationException exception = assertThrows(
+            WebApplicationException.class,
+            () -> authService.refresh("old-refresh-token").await().indefinitely()
+        );
+
+        // La password cambio despues de emitido el token: se revoca la familia y no se rota
+        assertEquals(401, exception.getResponse().getStatus());
+        verify(refreshTokenRepository).revokeFamily(eq("family-1"), any());
+        verify(refreshTokenRepository, never()).rotate(any(), any(), any());
+        verifyNoInteractions(keyProvider);
     }
 
 }
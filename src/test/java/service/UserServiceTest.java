@@ -3,7 +3,7 @@ package service;
 import model.User;
 
 import org.junit.jupiter.api.Test;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 import repository.UserRepository;
 import io.quarkus.test.InjectMock;
@@ -11,8 +11,14 @@ import io.quarkus.test.junit.QuarkusTest;
 import io.smallrye.mutiny.Uni;
 import jakarta.inject.Inject;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @QuarkusTest
@@ -24,6 +30,9 @@ class UserServiceTest {
     @InjectMock
     UserRepository userRepository;
 
+    @Inject
+    PasswordEncoder passwordEncoder;
+
     @Test
     void testCreateUserWithoutIdSuccess() {
         // Creamos un usuario de prueba que vendria del controller
@@ -32,12 +41,8 @@ class UserServiceTest {
         user.setEmail("test@test.com");
         user.setPassword("testpass");
 
-        // Agregamos interceptores para evitar que se ejecute la logica real del repositorio
-        when(userRepository.existsByEmail("test@test.com"))
-            .thenReturn(Uni.createFrom().item(false));
-
-        // Otro interceptor para la logica de guardado
-        when(userRepository.save(any(User.class)))
+        // Agregamos un interceptor para evitar que se ejecute la escritura transaccional real del repositorio
+        when(userRepository.create(any(User.class)))
             .thenAnswer(inv -> Uni.createFrom().item((User) inv.getArgument(0)));
 
         // Aqui se triggerea el metodo de create
@@ -50,8 +55,7 @@ class UserServiceTest {
 
         // Verificamos que la password fue hasheada de forma correcta
         assertTrue(
-            new BCryptPasswordEncoder()
-                .matches("testpass", result.getPassword())
+            passwordEncoder.matches("testpass", result.getPassword())
         );
     }
 
@@ -64,12 +68,8 @@ class UserServiceTest {
         user.setEmail("test@test.com");
         user.setPassword("testpass");
 
-        // Agregamos interceptores para evitar que se ejecute la logica real del repositorio
-        when(userRepository.existsByEmail("test@test.com"))
-            .thenReturn(Uni.createFrom().item(false));
-
-        // Otro interceptor para la logica de guardado
-        when(userRepository.save(any(User.class)))
+        // Agregamos un interceptor para evitar que se ejecute la escritura transaccional real del repositorio
+        when(userRepository.create(any(User.class)))
             .thenAnswer(inv -> Uni.createFrom().item((User) inv.getArgument(0)));
 
         // Aqui se triggerea el metodo de create
@@ -82,8 +82,7 @@ class UserServiceTest {
 
         // Verificamos que la password fue hasheada de forma correcta
         assertTrue(
-            new BCryptPasswordEncoder()
-                .matches("testpass", result.getPassword())
+            passwordEncoder.matches("testpass", result.getPassword())
         );
     }
 
@@ -95,13 +94,10 @@ class UserServiceTest {
         user.setEmail("test@test.com");
         user.setPassword("testpass");
 
-        // Agregamos interceptores para evitar que se ejecute la logica real del repositorio
-        when(userRepository.existsByEmail("test@test.com"))
-            .thenReturn(Uni.createFrom().item(true)); // Simulamos que ya existe el email ya que interceptamos
-
-        // Otro interceptor para la logica de guardado
-        when(userRepository.save(any(User.class)))
-            .thenAnswer(inv -> Uni.createFrom().item((User) inv.getArgument(0)));
+        // Simulamos que el guarda del email ya existe y la transaccion se cancela
+        when(userRepository.create(any(User.class)))
+            .thenReturn(Uni.createFrom().failure(
+                new IllegalArgumentException("User with email " + user.getEmail() + " already exists")));
 
         // Aqui se triggerea el metodo de create que deberia de generar una excepcion
         IllegalArgumentException exception = assertThrows(
@@ -114,6 +110,46 @@ class UserServiceTest {
 
     }
 
+    @Test
+    void testFindPageRejectsInvalidLimit() {
+        // Un limit fuera de rango no deberia llegar al repositorio
+        IllegalArgumentException exception = assertThrows(
+            IllegalArgumentException.class,
+            () -> userService.findPage(0, null).await().indefinitely()
+        );
+
+        assertEquals("limit must be between 1 and " + UserService.MAX_PAGE_SIZE, exception.getMessage());
+        verify(userRepository, never()).findPage(anyInt(), any());
+    }
+
+    @Test
+    void testFindAllByIdsKeepsRequestOrderAndReportsMissing() {
+        User first = new User();
+        first.setId("a");
+        User second = new User();
+        second.setId("c");
+
+        when(userRepository.findAllByIds(List.of("c", "b", "a")))
+            .thenReturn(Uni.createFrom().item(Map.of("a", first, "c", second)));
+
+        UserService.BatchLookup result = userService.findAllByIds(List.of("c", "b", "a", "c")).await().indefinitely();
+
+        assertEquals(List.of("c", "a"), result.users().stream().map(User::getId).toList());
+        assertEquals(List.of("b"), result.missing());
+    }
+
+    @Test
+    void testUpdatePasswordMarksCredentialsChanged() {
+        User changes = new User();
+        changes.setPassword("newpass");
+
+        when(userRepository.update(eq("id-1"), any())).thenReturn(Uni.createFrom().item(new User()));
+
+        userService.update("id-1", changes, null).await().indefinitely();
 
+        // Con password nueva se marca el cambio, asi AuthService rechaza los refresh tokens anteriores
+        verify(userRepository).update(eq("id-1"), argThat(update -> update.getCredentialsChangedAt() != null
+            && update.getCredentialsChangedAt().equals(update.getModified())));
+    }
 
-}
\ No newline at end of file
+}